@@ -0,0 +1,234 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * AlignmentScorer:
+ * Alignment-based scoring of typed text against a target, so a skipped or
+ * doubled character costs one error instead of shifting every later
+ * character out of place.
+ * - Edit distance between the typed text and the best-matching target
+ *   prefix, with Myers/Hyyro bit-parallel columns over long words
+ * - Longest common subsequence of the same pair (Hyyro's bit-parallel LCS),
+ *   which counts the correct characters
+ * - The distance is then split into substitutions, insertions and
+ *   deletions consistently with those two figures
+ *
+ * Each typed character adds one column of ceil(n / 64) words for a target
+ * of n characters. Deletions and mid-text edits restart from the nearest
+ * column snapshot (one every CHECKPOINT columns) instead of from scratch.
+ * Fed with the same insert/remove offsets as ProgressTracker.
+ */
+public class AlignmentScorer {
+
+    /**
+     * Longest target worth aligning. Per-keystroke work and snapshot memory
+     * grow with the target, so callers score longer ones (book chapters)
+     * positionally.
+     */
+    public static final int MAX_TARGET = 10_000;
+
+    private static final int CHECKPOINT = 16;
+    private static final char[] ASCII_EQUIVALENTS = {'"', '\'', '-'};
+
+    private String target = "";
+    private int words = 1;
+    private final long[][] asciiPeq = new long[128][];
+    private final Map<Character, long[]> otherPeq = new HashMap<>();
+    private long[] vp = new long[1], vn = new long[1], lcs = new long[1];
+    private long[] snapshots = new long[0];
+    private int checkpoints;
+    private char[] typed = new char[64];
+    private int typedLength;
+
+    private boolean evaluated = true;
+    private int distance, alignedLength, correct;
+
+    /** Starts a new passage with nothing typed. */
+    public void reset(String target) {
+        this.target = target;
+        int n = target.length();
+        words = Math.max(1, (n + 63) >>> 6);
+        Arrays.fill(asciiPeq, null);
+        otherPeq.clear();
+        for (int i = 0; i < n; i++) {
+            char t = target.charAt(i);
+            mark(t, i);
+            for (char ascii : ASCII_EQUIVALENTS) if (ascii != t && ProgressTracker.matches(ascii, t)) mark(ascii, i);
+        }
+        if (vp.length < words) {
+            vp = new long[words];
+            vn = new long[words];
+            lcs = new long[words];
+        }
+        Arrays.fill(vp, 0, words, -1L);
+        Arrays.fill(vn, 0, words, 0L);
+        Arrays.fill(lcs, 0, words, -1L);
+        typedLength = 0;
+        checkpoints = 0;
+        saveCheckpoint(0);
+        evaluated = false;
+    }
+
+    private void mark(char c, int row) {
+        long[] mask = c < 128 ? asciiPeq[c] : otherPeq.get(c);
+        if (mask == null) {
+            mask = new long[words];
+            if (c < 128) asciiPeq[c] = mask; else otherPeq.put(c, mask);
+        }
+        mask[row >>> 6] |= 1L << row;
+    }
+
+    /** Records text inserted at the given offset of the typed text. */
+    public void insert(int offset, CharSequence text) {
+        int count = text.length();
+        if (count == 0) return;
+        if (typedLength + count > typed.length) typed = Arrays.copyOf(typed, Math.max(typedLength + count, typed.length * 2));
+        System.arraycopy(typed, offset, typed, offset + count, typedLength - offset);
+        for (int i = 0; i < count; i++) typed[offset + i] = text.charAt(i);
+        typedLength += count;
+        if (offset < typedLength - count) rewind(offset);
+        for (int column = offset; column < typedLength; column++) advance(column);
+    }
+
+    /** Records the removal of length characters starting at offset. */
+    public void remove(int offset, int length) {
+        if (length == 0) return;
+        System.arraycopy(typed, offset + length, typed, offset, typedLength - offset - length);
+        typedLength -= length;
+        rewind(offset);
+        for (int column = offset; column < typedLength; column++) advance(column);
+    }
+
+    /** Replaces the whole typed text, e.g. a full line read from the console. */
+    public void setTyped(CharSequence text) {
+        remove(0, typedLength);
+        insert(0, text);
+    }
+
+    public int typedLength() { return typedLength; }
+
+    /** Edit distance between the typed text and the closest target prefix. */
+    public int distance() { evaluate(); return distance; }
+
+    /** Length of the target prefix the typed text aligns with. */
+    public int alignedLength() { evaluate(); return alignedLength; }
+
+    /** Typed characters matched to the target in order. */
+    public int correctCount() { evaluate(); return correct; }
+
+    public int substitutions() { evaluate(); return typedLength + alignedLength - 2 * correct - distance; }
+
+    /** Extra typed characters. */
+    public int insertions() { evaluate(); return correct - alignedLength + distance; }
+
+    /** Skipped target characters. */
+    public int deletions() { evaluate(); return distance - typedLength + correct; }
+
+    /** Percentage of alignment positions that are correct characters. */
+    public double accuracy() {
+        evaluate();
+        int positions = correct + distance;
+        return positions == 0 ? 100.0 : 100.0 * correct / positions;
+    }
+
+    /**
+     * Adds typed[column] as the next column of both bit-parallel matrices.
+     * Rows are target positions; the top row of the distance matrix is the
+     * column index (a fixed start), carried in as a +1 horizontal delta.
+     */
+    private void advance(int column) {
+        char c = typed[column];
+        long[] peq = c < 128 ? asciiPeq[c] : otherPeq.get(c);
+        int hin = 1;
+        long carry = 0, borrow = 0;
+        for (int w = 0; w < words; w++) {
+            long eq = peq == null ? 0 : peq[w];
+
+            // Edit distance (Myers' block step with horizontal delta hin)
+            long pv = vp[w], mv = vn[w];
+            long xv = eq | mv;
+            long e = hin < 0 ? eq | 1 : eq;
+            long xh = (((e & pv) + pv) ^ pv) | e;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            int hout = (int) (ph >>> 63) - (int) (mh >>> 63);
+            ph <<= 1;
+            mh <<= 1;
+            if (hin < 0) mh |= 1; else if (hin > 0) ph |= 1;
+            vp[w] = mh | ~(xv | ph);
+            vn[w] = ph & xv;
+            hin = hout;
+
+            // LCS: V' = (V + U) | (V - U) with U = V & eq, carried across words
+            long v = lcs[w], u = v & eq;
+            long sum = v + u, total = sum + carry;
+            carry = (Long.compareUnsigned(sum, v) < 0 || Long.compareUnsigned(total, sum) < 0) ? 1 : 0;
+            long diff = v - u, rest = diff - borrow;
+            borrow = (Long.compareUnsigned(v, u) < 0 || Long.compareUnsigned(diff, borrow) < 0) ? 1 : 0;
+            lcs[w] = total | rest;
+        }
+        if ((column + 1) % CHECKPOINT == 0) saveCheckpoint((column + 1) / CHECKPOINT);
+        evaluated = false;
+    }
+
+    /** Restores the columns for typed[0..column) from the nearest snapshot. */
+    private void rewind(int column) {
+        int c = Math.min(column / CHECKPOINT, checkpoints - 1);
+        int at = c * 3 * words;
+        System.arraycopy(snapshots, at, vp, 0, words);
+        System.arraycopy(snapshots, at + words, vn, 0, words);
+        System.arraycopy(snapshots, at + 2 * words, lcs, 0, words);
+        checkpoints = c + 1;
+        for (int i = c * CHECKPOINT; i < column; i++) advance(i);
+        evaluated = false;
+    }
+
+    private void saveCheckpoint(int index) {
+        int at = index * 3 * words;
+        if (at + 3 * words > snapshots.length) snapshots = Arrays.copyOf(snapshots, Math.max(at + 3 * words, snapshots.length * 2));
+        System.arraycopy(vp, 0, snapshots, at, words);
+        System.arraycopy(vn, 0, snapshots, at + words, words);
+        System.arraycopy(lcs, 0, snapshots, at + 2 * words, words);
+        checkpoints = index + 1;
+    }
+
+    /**
+     * Finds the target prefix with the smallest distance (the most correct
+     * characters on ties). A prefix of length i is at least |i - m| edits
+     * from m typed characters, so only rows within the distance at row m
+     * can win.
+     */
+    private void evaluate() {
+        if (evaluated) return;
+        int m = typedLength, n = target.length();
+        int start = Math.min(m, n);
+        int d0 = m + prefixBits(vp, start) - prefixBits(vn, start);
+        int lo = Math.max(0, m - d0), hi = Math.min(n, m + d0);
+        int d = m + prefixBits(vp, lo) - prefixBits(vn, lo);
+        int l = lo - prefixBits(lcs, lo);
+        distance = d;
+        alignedLength = lo;
+        correct = l;
+        for (int i = lo; i < hi; i++) {
+            long bit = 1L << i;
+            int w = i >>> 6;
+            if ((vp[w] & bit) != 0) d++; else if ((vn[w] & bit) != 0) d--;
+            if ((lcs[w] & bit) == 0) l++;
+            if (d < distance || (d == distance && l > correct)) {
+                distance = d;
+                alignedLength = i + 1;
+                correct = l;
+            }
+        }
+        evaluated = true;
+    }
+
+    /** Set bits among the lowest count bits. */
+    private static int prefixBits(long[] bits, int count) {
+        int total = 0, full = count >>> 6;
+        for (int w = 0; w < full; w++) total += Long.bitCount(bits[w]);
+        if ((count & 63) != 0) total += Long.bitCount(bits[full] & ((1L << count) - 1));
+        return total;
+    }
+}
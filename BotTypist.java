@@ -0,0 +1,113 @@
+import java.util.Random;
+
+/**
+ * BotTypist:
+ * A simulated typist that produces a realistic keystroke stream for a
+ * TypingEngine round, reproducible from its seed.
+ * - Key intervals are log-normal around the profile's WPM (one word is
+ *   five characters); words may start after a pause or be typed in a burst
+ * - Typos hit a neighbouring QWERTY key; the bot notices one to four keys
+ *   later and backspaces to the error before going on
+ * - Reads the round's state from the engine it types into, so it follows
+ *   whatever that engine scored; allocates nothing per key
+ *
+ * Call next() for a key, then delayNanos() for the think time before it.
+ */
+public class BotTypist {
+
+    /** How a bot types; one profile can be shared by many bots. */
+    public static final class Profile {
+        /** Mean speed between pauses. */
+        public double wpm = 70;
+        /** Chance that a key is a typo. */
+        public double errorRate = 0.04;
+        /** Spread of the key intervals (sigma of their logarithm). */
+        public double jitter = 0.35;
+        /** Chance that a word starts after a pause, and the mean pause. */
+        public double pauseChance = 0.08;
+        public long pauseNanos = 600_000_000L;
+        /** Chance that a word is typed in a burst, and the burst's interval factor. */
+        public double burstChance = 0.2, burstFactor = 0.6;
+
+        /** A copy typing at wpm, e.g. to spread bots around a mean speed. */
+        public Profile at(double wpm) {
+            Profile p = new Profile();
+            p.wpm = wpm;
+            p.errorRate = errorRate;
+            p.jitter = jitter;
+            p.pauseChance = pauseChance;
+            p.pauseNanos = pauseNanos;
+            p.burstChance = burstChance;
+            p.burstFactor = burstFactor;
+            return p;
+        }
+    }
+
+    /** next() returns this when the round is complete. */
+    public static final char DONE = 0;
+
+    private static final String[] ROWS = {"qwertyuiop", "asdfghjkl", "zxcvbnm"};
+
+    private final Random random;
+    private final Profile profile;
+    private final double meanInterval;
+    private int noticeAfter;
+    private boolean burst, correcting;
+    private long delay;
+
+    public BotTypist(long seed, Profile profile) {
+        this.random = new Random(seed);
+        this.profile = profile;
+        this.meanInterval = 12e9 / profile.wpm; // 60 s / (wpm * 5 characters)
+    }
+
+    /**
+     * The next key for the engine's round: a character, KeystrokeTimeline.DELETE
+     * for a backspace, or DONE.
+     */
+    public char next(TypingEngine engine) {
+        String target = engine.target();
+        int typed = engine.typedLength(), firstError = engine.firstErrorIndex();
+        if (engine.isComplete()) {
+            delay = 0;
+            return DONE;
+        }
+        correcting = firstError >= 0 && (correcting || typed >= target.length() || typed - firstError >= noticeAfter);
+        if (correcting) {
+            delay = interval(0.8);
+            return KeystrokeTimeline.DELETE;
+        }
+        char c = target.charAt(typed);
+        boolean wordStart = typed == 0 || target.charAt(typed - 1) == ' ';
+        if (wordStart) burst = random.nextDouble() < profile.burstChance;
+        delay = interval(burst ? profile.burstFactor : 1);
+        if (wordStart && random.nextDouble() < profile.pauseChance) {
+            delay += (long) (-Math.log(1 - random.nextDouble()) * profile.pauseNanos);
+        }
+        if (random.nextDouble() < profile.errorRate) {
+            if (firstError < 0) noticeAfter = 1 + random.nextInt(4);
+            return typo(c);
+        }
+        return c;
+    }
+
+    /** Think time before the key last returned by next(), in nanoseconds. */
+    public long delayNanos() { return delay; }
+
+    private long interval(double factor) {
+        double sigma = profile.jitter;
+        return (long) (meanInterval * factor * Math.exp(sigma * random.nextGaussian() - sigma * sigma / 2));
+    }
+
+    /** A neighbouring key on the same QWERTY row, or a random letter. */
+    private char typo(char c) {
+        char lower = Character.toLowerCase(c);
+        for (String row : ROWS) {
+            int at = row.indexOf(lower);
+            if (at < 0) continue;
+            int next = at == 0 ? 1 : at == row.length() - 1 || random.nextBoolean() ? at - 1 : at + 1;
+            return lower == c ? row.charAt(next) : Character.toUpperCase(row.charAt(next));
+        }
+        return (char) ('a' + random.nextInt(26)); // c is not a letter here
+    }
+}
@@ -0,0 +1,192 @@
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.*;
+import jdk.jfr.EventType;
+
+/**
+ * Mechanical Sound Engine: Procedural White Noise Version
+ *
+ * A dedicated audio thread owns one long-lived SourceDataLine. playClick()
+ * only stamps the request into a lock-free ring and wakes that thread, so it
+ * returns in microseconds on the EDT. The audio thread mixes overlapping
+ * clicks into a small chunk buffer and writes it to the line, which paces
+ * the loop. Request-to-line latency is measured for every click, kept in a
+ * LatencyHistogram and, while a recording enables it, emitted as a
+ * TypingMetrics.Click JFR event.
+ */
+public class ClickSoundEngine {
+
+    private static final float SAMPLE_RATE = 44100;
+    private static final int CHUNK_FRAMES = 256;
+    private static final int MAX_VOICES = 8;
+    private static final int QUEUE_SIZE = 64;
+
+    private final AudioFormat format = new AudioFormat(SAMPLE_RATE, 8, 1, true, false);
+    private final byte[] clickSoundData;
+    private final byte[] mix = new byte[CHUNK_FRAMES];
+    private final int[] voicePosition = new int[MAX_VOICES];
+    private final long[] voiceRequested = new long[MAX_VOICES];
+
+    private final AtomicLongArray requests = new AtomicLongArray(QUEUE_SIZE);
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private final Thread audioThread;
+    private SourceDataLine line;
+    private volatile boolean running = true;
+    private final AtomicLong droppedClicks = new AtomicLong();
+    private volatile long clicksPlayed, totalLatencyNanos, maxLatencyNanos;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private EventType clickType; // audio thread only
+
+    /** Opens the audio line and starts the audio thread; without a line, every click is a no-op. */
+    public static ClickSoundEngine open() {
+        ClickSoundEngine engine = new ClickSoundEngine();
+        if (engine.line != null) engine.audioThread.start();
+        return engine;
+    }
+
+    private ClickSoundEngine() {
+        int durationMs = 25;
+        int bufferSize = (int)(SAMPLE_RATE * (durationMs / 1000.0));
+        clickSoundData = new byte[bufferSize];
+
+        Random r = new Random();
+        for (int i = 0; i < clickSoundData.length; i++) {
+            double noise = (r.nextDouble() * 2.0) - 1.0;
+            double decay = 1.0 - ((double)i / clickSoundData.length);
+            double amplitude = noise * (decay * decay);
+            clickSoundData[i] = (byte)(amplitude * 127);
+        }
+        java.util.Arrays.fill(voicePosition, -1);
+
+        try {
+            line = AudioSystem.getSourceDataLine(format);
+            line.open(format, CHUNK_FRAMES * 4);
+            line.start();
+        } catch (Exception e) {
+            line = null;
+        }
+        audioThread = new Thread(this::runAudio, "click-audio");
+        audioThread.setDaemon(true);
+        audioThread.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    /** Whether an audio line could be opened; without one, playClick is a no-op. */
+    public boolean isAvailable() { return line != null; }
+
+    /**
+     * Queues a click. Never blocks: when the ring is full (far beyond any
+     * human typing rate) the click is dropped and counted.
+     */
+    public void playClick() {
+        if (line == null) return;
+        long now = System.nanoTime() | 1L;
+        long t;
+        do {
+            t = tail.get();
+            if (t - head.get() >= QUEUE_SIZE) { droppedClicks.incrementAndGet(); return; }
+        } while (!tail.compareAndSet(t, t + 1));
+        requests.lazySet((int)(t & (QUEUE_SIZE - 1)), now);
+        LockSupport.unpark(audioThread);
+    }
+
+    public long clicksPlayed() { return clicksPlayed; }
+
+    public long droppedClicks() { return droppedClicks.get(); }
+
+    /** Mean time from playClick() until the click's first samples were queued on the line, plus the audio already buffered ahead of them. */
+    public long meanLatencyNanos() { return clicksPlayed == 0 ? 0 : totalLatencyNanos / clicksPlayed; }
+
+    public long maxLatencyNanos() { return maxLatencyNanos; }
+
+    /** Distribution of the same latency, for percentiles. */
+    public LatencyHistogram latencies() { return latencies; }
+
+    public void close() {
+        running = false;
+        LockSupport.unpark(audioThread);
+    }
+
+    private void runAudio() {
+        clickType = EventType.getEventType(TypingMetrics.Click.class);
+        try {
+            while (running) {
+                boolean active = drainRequests();
+                if (!active) { LockSupport.park(this); continue; }
+                mixChunk();
+                line.write(mix, 0, mix.length);
+                recordLatency();
+            }
+        } finally {
+            line.stop();
+            line.close();
+        }
+    }
+
+    /** Moves queued requests into free voices; returns whether any voice is playing. */
+    private boolean drainRequests() {
+        long h = head.get();
+        while (h < tail.get()) {
+            int slot = (int)(h & (QUEUE_SIZE - 1));
+            long requested = requests.get(slot);
+            if (requested == 0) break;
+            requests.lazySet(slot, 0);
+            head.lazySet(++h);
+            int voice = freeVoice();
+            if (voice < 0) { droppedClicks.incrementAndGet(); continue; }
+            voicePosition[voice] = 0;
+            voiceRequested[voice] = requested;
+        }
+        for (int p : voicePosition) if (p >= 0) return true;
+        return false;
+    }
+
+    private int freeVoice() {
+        for (int v = 0; v < MAX_VOICES; v++) if (voicePosition[v] < 0) return v;
+        return -1;
+    }
+
+    /** Sums all active voices into the chunk buffer, clamped to 8-bit range. */
+    private void mixChunk() {
+        for (int i = 0; i < CHUNK_FRAMES; i++) {
+            int sum = 0;
+            for (int v = 0; v < MAX_VOICES; v++) {
+                int p = voicePosition[v];
+                if (p < 0) continue;
+                sum += clickSoundData[p];
+                voicePosition[v] = p + 1 < clickSoundData.length ? p + 1 : -1;
+            }
+            mix[i] = (byte) Math.max(-128, Math.min(127, sum));
+        }
+    }
+
+    /**
+     * Folds voices that started in the chunk just written into the latency
+     * stats: time spent reaching the line plus the audio queued ahead of it.
+     */
+    private void recordLatency() {
+        long now = System.nanoTime();
+        int queuedAhead = Math.max(0, line.getBufferSize() - line.available() - CHUNK_FRAMES);
+        long bufferedNanos = (long)(queuedAhead * 1_000_000_000L / SAMPLE_RATE);
+        for (int v = 0; v < MAX_VOICES; v++) {
+            long requested = voiceRequested[v];
+            if (requested == 0) continue;
+            voiceRequested[v] = 0;
+            long latency = now - requested + bufferedNanos;
+            totalLatencyNanos += latency;
+            if (latency > maxLatencyNanos) maxLatencyNanos = latency;
+            clicksPlayed++;
+            latencies.record(latency);
+            if (clickType.isEnabled()) { // no event allocated unless a recording wants it
+                TypingMetrics.Click event = new TypingMetrics.Click();
+                if (event.shouldCommit()) {
+                    event.latency = latency;
+                    event.commit();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,435 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * DifficultyScorer:
+ * Java port of scripts/difficulty-score.mjs (scoring model v3). Produces the
+ * same 0-100 prose and code scores as the repository checks.
+ * - Single pass over the characters; no regex, split, or substring
+ * - Whole corpora are scored in parallel with fork-join
+ * - Results are cached on disk by content hash, so a rescore only touches
+ *   passages that changed
+ *
+ * Collections other than the four built-in ones use the General profile.
+ */
+public class DifficultyScorer {
+
+    public static final int VERSION = 3;
+    public static final int EASY_MAX = 24, MEDIUM_MAX = 60;
+
+    private static final String CACHE_FILE = "difficulty-cache.bin";
+    private static final int CACHE_MAGIC = 0x50544443; // "PTDC"
+    private static final int CACHE_HEADER = 8, CACHE_RECORD = 9; // magic, version; content hash, score
+    private static final int LEAF_SIZE = 64;
+
+    /** Profile indexes; CODE uses the code model, the others the prose model. */
+    static final int GENERAL = 0, CALM = 1, QUOTES = 2, CODE = 3;
+
+    // {length, averageWordLength, longWordRatio, precisionDensity, structureEvents, maximumSentenceWords} anchors
+    private static final double[][][] PROSE_ANCHORS = {
+        {{24, 410}, {4.1, 6.7}, {0.04, 0.38}, {0.018, 0.07}, {1, 18}, {7, 55}},
+        {{55, 235}, {4.15, 5.35}, {0.02, 0.18}, {0.015, 0.055}, {1, 16}, {9, 36}},
+        {{24, 430}, {3.9, 5.5}, {0.03, 0.20}, {0.02, 0.07}, {1, 22}, {7, 55}}
+    };
+    // {length, lexical, precision, structure} weights
+    private static final double[][] PROSE_WEIGHTS = {{45, 25, 12, 18}, {50, 10, 15, 25}, {50, 10, 15, 25}};
+    // {easyMaximum, hardMinimum} raw thresholds for general, calm, quotes, code
+    private static final double[][] RAW_THRESHOLDS = {{35, 63}, {20, 60}, {20, 60}, {20, 65}};
+
+    private static final String[] KEYWORDS = {
+        "if", "else", "for", "while", "return", "function", "class", "try", "catch", "throw", "await", "async",
+        "select", "from", "where", "join", "group", "order", "begin", "commit", "match", "some", "none"
+    };
+
+    private final Path cacheFile;
+    private long[] cacheKeys = new long[1024];
+    private int[] cacheValues = new int[1024];
+    private long[] order = new long[1024]; // insertion order, so only new entries are appended
+    private int cacheSize;
+    private boolean cacheLoaded;
+
+    /** A scorer backed by difficulty-cache.bin in the working directory. */
+    public DifficultyScorer() {
+        this(Paths.get(CACHE_FILE));
+    }
+
+    public DifficultyScorer(Path cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /** Profile index for a collection name. */
+    static int profile(String collection) {
+        switch (collection) {
+            case "calm": return CALM;
+            case "quotes": return QUOTES;
+            case "code": return CODE;
+            default: return GENERAL;
+        }
+    }
+
+    /** Difficulty tier index (0 easy, 1 medium, 2 hard) for a calibrated score. */
+    public static int tier(int score) {
+        return score <= EASY_MAX ? 0 : score <= MEDIUM_MAX ? 1 : 2;
+    }
+
+    /** Calibrated 0-100 score of one passage, computed directly without the cache. */
+    public static int score(String collection, CharSequence text) {
+        return calibrate(profile(collection), rawScore(profile(collection), text, new Metrics()));
+    }
+
+    /**
+     * Scores every listed passage of a store in parallel, reusing cached
+     * scores for unchanged text, and persists newly computed scores.
+     * Returns scores aligned with the passages array.
+     */
+    public synchronized int[] scoreAll(PassageStore store, int[] passages) {
+        loadCache();
+        int[] scores = new int[passages.length];
+        long[] keys = new long[passages.length];
+        ForkJoinPool.commonPool().invoke(new ScoreTask(store, passages, scores, keys, 0, passages.length));
+        int before = cacheSize;
+        for (int i = 0; i < passages.length; i++) {
+            if (keys[i] != 0) put(keys[i], scores[i]);
+        }
+        if (cacheSize > before) appendCache(before);
+        return scores;
+    }
+
+    /** Fork-join leaf work: cache lookups are read-only here; new scores are returned through keys[]. */
+    private final class ScoreTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final transient PassageStore store; // tasks only live inside one scoreAll call
+        private final int[] passages, scores;
+        private final long[] keys;
+        private final int from, to;
+
+        ScoreTask(PassageStore store, int[] passages, int[] scores, long[] keys, int from, int to) {
+            this.store = store; this.passages = passages; this.scores = scores; this.keys = keys;
+            this.from = from; this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ScoreTask(store, passages, scores, keys, from, mid),
+                          new ScoreTask(store, passages, scores, keys, mid, to));
+                return;
+            }
+            Metrics m = new Metrics();
+            for (int i = from; i < to; i++) {
+                int profile = profile(store.collectionOf(passages[i]));
+                String text = store.text(passages[i]);
+                long key = contentHash(profile, text);
+                int cached = cachedScore(key);
+                if (cached >= 0) { scores[i] = cached; continue; }
+                scores[i] = calibrate(profile, rawScore(profile, text, m));
+                keys[i] = key;
+            }
+        }
+    }
+
+    // --- scoring model ---
+
+    /** Reusable per-thread holder for the metrics of analyzePassage(). */
+    static final class Metrics {
+        int characters, words, structureEvents, maximumSentenceWords, lines;
+        int maximumDelimiterDepth, maximumIndentationDepth, syntaxTransitions;
+        double averageWordLength, longWordRatio, precisionDensity;
+    }
+
+    static double rawScore(int profile, CharSequence text, Metrics m) {
+        analyze(text, m);
+        if (profile == CODE) {
+            double length = scale(m.characters, 24, 220), lines = scale(m.lines, 1, 5);
+            double symbols = scale(m.precisionDensity, 0.09, 0.27), nesting = scale(m.maximumDelimiterDepth, 0, 3);
+            double indentation = scale(m.maximumIndentationDepth, 0, 3), syntax = scale(m.syntaxTransitions, 1, 11);
+            double total = 0;
+            total += length * 25 / 100;
+            total += lines * 35 / 100;
+            total += symbols * 10 / 100;
+            total += nesting * 15 / 100;
+            total += indentation * 5 / 100;
+            total += syntax * 10 / 100;
+            return total;
+        }
+        double[][] a = PROSE_ANCHORS[profile];
+        double[] w = PROSE_WEIGHTS[profile];
+        double lexical = scale(m.averageWordLength, a[1][0], a[1][1]) * 0.45 + scale(m.longWordRatio, a[2][0], a[2][1]) * 0.55;
+        double structure = scale(m.structureEvents, a[4][0], a[4][1]) * 0.55 + scale(m.maximumSentenceWords, a[5][0], a[5][1]) * 0.45;
+        double total = 0;
+        total += scale(m.characters, a[0][0], a[0][1]) * w[0] / 100;
+        total += lexical * w[1] / 100;
+        total += scale(m.precisionDensity, a[3][0], a[3][1]) * w[2] / 100;
+        total += structure * w[3] / 100;
+        return total;
+    }
+
+    static int calibrate(int profile, double raw) {
+        double easyMax = RAW_THRESHOLDS[profile][0], hardMin = RAW_THRESHOLDS[profile][1];
+        if (raw <= easyMax) return (int) Math.round(scale(raw, 0, easyMax) * 0.24);
+        if (raw < hardMin) return (int) Math.round(40 + scale(raw, easyMax, hardMin) * 0.20);
+        return (int) Math.round(72 + scale(raw, hardMin, 100) * 0.28);
+    }
+
+    static void analyze(CharSequence t, Metrics m) {
+        int n = t.length();
+        int words = 0, letters = 0, longWords = 0, sentenceWords = 0, maxSentenceWords = 0;
+        int punctuation = 0, sentenceTransitions = 0, clauseMarks = 0, quoteMarks = 0;
+        int depth = 0, maxDepth = 0, lines = 1, maxIndent = 0, indent = 0, syntax = 0;
+        boolean lineStart = true;
+
+        for (int i = 0; i < n; i++) {
+            char c = t.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < n) {
+                if (isPunctuationOrSymbol(Character.codePointAt(t, i))) punctuation++;
+                lineStart = false;
+                i++;
+                continue;
+            }
+            if (c == '\n') {
+                lines++;
+                lineStart = true;
+                indent = 0;
+                continue;
+            }
+            if (lineStart) {
+                if (c == ' ') { maxIndent = Math.max(maxIndent, ++indent / 2); } else lineStart = false;
+            }
+            if (isPunctuationOrSymbol(c)) punctuation++;
+            if ((c == '.' || c == '!' || c == '?') && (i + 1 == n || isSpace(t.charAt(i + 1)))) sentenceTransitions++;
+            switch (c) {
+                case ',': case ';': case ':': case '\u2014': case '\u2013':
+                case '(': case ')': case '[': case ']': case '{': case '}':
+                    clauseMarks++;
+            }
+            switch (c) {
+                case '\u201C': case '\u201D': case '"': case '\u2018': case '\u2019':
+                    quoteMarks++;
+            }
+            if (c == '(' || c == '[' || c == '{') maxDepth = Math.max(maxDepth, ++depth);
+            else if (c == ')' || c == ']' || c == '}') depth = Math.max(0, depth - 1);
+        }
+
+        // Words ([A-Za-z]+ with one optional apostrophe part) and sentence lengths split on [.!?]+(?:\s|$)
+        for (int i = 0; i < n; ) {
+            char c = t.charAt(i);
+            if (isLetter(c)) {
+                int len = 0;
+                while (i < n && isLetter(t.charAt(i))) { i++; len++; }
+                if (i + 1 < n && (t.charAt(i) == '\'' || t.charAt(i) == '\u2019') && isLetter(t.charAt(i + 1))) {
+                    i++;
+                    while (i < n && isLetter(t.charAt(i))) { i++; len++; }
+                }
+                words++;
+                letters += len;
+                if (len >= 8) longWords++;
+                sentenceWords++;
+            } else if (c == '.' || c == '!' || c == '?') {
+                int end = i;
+                while (end < n && (t.charAt(end) == '.' || t.charAt(end) == '!' || t.charAt(end) == '?')) end++;
+                if (end == n || isSpace(t.charAt(end))) {
+                    maxSentenceWords = Math.max(maxSentenceWords, sentenceWords);
+                    sentenceWords = 0;
+                }
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        maxSentenceWords = Math.max(maxSentenceWords, sentenceWords);
+
+        // Syntax transitions: whole-word keywords, =>, ??, ::, and .name( calls
+        for (int i = 0; i < n; ) {
+            char c = t.charAt(i);
+            if (isWordChar(c)) {
+                int end = i;
+                while (end < n && isWordChar(t.charAt(end))) end++;
+                if ((i == 0 || !isWordChar(t.charAt(i - 1))) && isKeyword(t, i, end)) syntax++;
+                i = end;
+            } else if (c == '.' && i + 1 < n && isWordChar(t.charAt(i + 1))) {
+                int end = i + 1;
+                while (end < n && isWordChar(t.charAt(end))) end++;
+                while (end < n && isSpace(t.charAt(end))) end++;
+                if (end < n && t.charAt(end) == '(') { syntax++; i = end + 1; } else i++;
+            } else if (i + 1 < n && ((c == '=' && t.charAt(i + 1) == '>') || (c == '?' && t.charAt(i + 1) == '?') || (c == ':' && t.charAt(i + 1) == ':'))) {
+                syntax++;
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+
+        m.characters = n;
+        m.words = words;
+        m.averageWordLength = words == 0 ? 0 : round3((double) letters / words);
+        m.longWordRatio = words == 0 ? 0 : round3((double) longWords / words);
+        m.precisionDensity = n == 0 ? 0 : round3((double) punctuation / n);
+        m.structureEvents = clauseMarks + Math.max(0, sentenceTransitions - 1) * 2 + (quoteMarks + 1) / 2;
+        m.maximumSentenceWords = maxSentenceWords;
+        m.lines = lines;
+        m.maximumDelimiterDepth = maxDepth;
+        m.maximumIndentationDepth = maxIndent;
+        m.syntaxTransitions = syntax;
+    }
+
+    private static double scale(double value, double easyAnchor, double hardAnchor) {
+        return Math.min(100, Math.max(0, ((value - easyAnchor) / (hardAnchor - easyAnchor)) * 100));
+    }
+
+    /** Number(value.toFixed(3)) for non-negative values; exact decimal rounding only near a tie. */
+    private static double round3(double value) {
+        double scaled = value * 1000;
+        double fraction = scaled - Math.floor(scaled);
+        if (Math.abs(fraction - 0.5) > 1e-6) return Math.round(scaled) / 1000.0;
+        return new BigDecimal(value).setScale(3, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    private static boolean isWordChar(char c) {
+        return isLetter(c) || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /** JavaScript's \s class. */
+    private static boolean isSpace(char c) {
+        if (c == ' ' || (c >= '\t' && c <= '\r')) return true;
+        if (c < '\u00A0') return false;
+        return c == '\u00A0' || c == '\u1680' || (c >= '\u2000' && c <= '\u200A') || c == '\u2028' || c == '\u2029'
+                || c == '\u202F' || c == '\u205F' || c == '\u3000' || c == '\uFEFF';
+    }
+
+    /** Unicode \p{P} or \p{S}. */
+    private static boolean isPunctuationOrSymbol(int codePoint) {
+        switch (Character.getType(codePoint)) {
+            case Character.CONNECTOR_PUNCTUATION: case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION: case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION: case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION: case Character.MATH_SYMBOL:
+            case Character.CURRENCY_SYMBOL: case Character.MODIFIER_SYMBOL: case Character.OTHER_SYMBOL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isKeyword(CharSequence t, int from, int to) {
+        int len = to - from;
+        outer:
+        for (String k : KEYWORDS) {
+            if (k.length() != len) continue;
+            for (int j = 0; j < len; j++) {
+                if (Character.toLowerCase(t.charAt(from + j)) != k.charAt(j)) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // --- score cache ---
+
+    /** 64-bit FNV-1a over the profile and the passage characters; never 0. */
+    static long contentHash(int profile, CharSequence text) {
+        long h = 0xcbf29ce484222325L ^ profile;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            h = (h ^ (c & 0xFF)) * 0x100000001b3L;
+            h = (h ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    private int cachedScore(long key) {
+        int mask = cacheKeys.length - 1;
+        for (int i = (int)(mix(key) & mask); cacheKeys[i] != 0; i = (i + 1) & mask) {
+            if (cacheKeys[i] == key) return cacheValues[i];
+        }
+        return -1;
+    }
+
+    private void put(long key, int value) {
+        if ((cacheSize + 1) * 2 > cacheKeys.length) rehash(cacheKeys.length * 2);
+        int mask = cacheKeys.length - 1;
+        int i = (int)(mix(key) & mask);
+        while (cacheKeys[i] != 0 && cacheKeys[i] != key) i = (i + 1) & mask;
+        if (cacheKeys[i] == 0) { cacheSize++; order = ensure(order, cacheSize); order[cacheSize - 1] = key; }
+        cacheKeys[i] = key;
+        cacheValues[i] = value;
+    }
+
+    private static long[] ensure(long[] a, int size) {
+        return size <= a.length ? a : Arrays.copyOf(a, Math.max(size, a.length * 2));
+    }
+
+    private void rehash(int capacity) {
+        long[] keys = cacheKeys;
+        int[] values = cacheValues;
+        cacheKeys = new long[capacity];
+        cacheValues = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < keys.length; j++) {
+            if (keys[j] == 0) continue;
+            int i = (int)(mix(keys[j]) & mask);
+            while (cacheKeys[i] != 0) i = (i + 1) & mask;
+            cacheKeys[i] = keys[j];
+            cacheValues[i] = values[j];
+        }
+    }
+
+    private static long mix(long key) {
+        return key ^ (key >>> 29) ^ (key >>> 47);
+    }
+
+    private void loadCache() {
+        if (cacheLoaded) return;
+        cacheLoaded = true;
+        if (!Files.isRegularFile(cacheFile)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != VERSION) return;
+            while (true) {
+                long key = in.readLong();
+                int score = in.readUnsignedByte();
+                put(key, score);
+            }
+        } catch (EOFException e) {
+            // end of cache, or a record cut short by a crash; the partial record is ignored
+        } catch (IOException e) {}
+    }
+
+    private void appendCache(int from) {
+        try {
+            boolean fresh = !Files.isRegularFile(cacheFile) || !hasCurrentHeader();
+            if (!fresh) {
+                try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.WRITE)) {
+                    long size = channel.size();
+                    channel.truncate(size - (size - CACHE_HEADER) % CACHE_RECORD); // cut a torn record, so appends stay aligned
+                }
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fresh
+                    ? Files.newOutputStream(cacheFile)
+                    : Files.newOutputStream(cacheFile, StandardOpenOption.APPEND)))) {
+                if (fresh) { out.writeInt(CACHE_MAGIC); out.writeInt(VERSION); from = 0; }
+                for (int i = from; i < cacheSize; i++) {
+                    out.writeLong(order[i]);
+                    out.writeByte(cachedScore(order[i]));
+                }
+            }
+        } catch (IOException e) {}
+    }
+
+    private boolean hasCurrentHeader() throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(cacheFile))) {
+            return in.readInt() == CACHE_MAGIC && in.readInt() == VERSION;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+}
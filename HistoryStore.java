@@ -0,0 +1,351 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.zip.CRC32C;
+
+/**
+ * HistoryStore:
+ * Local round history and settings in one append-only binary file
+ * (history.bin), shared by both Java editions.
+ * - Fixed-width 48-byte round records, each closed by a CRC32C
+ * - Two settings slots written alternately, so a torn write always leaves
+ *   the previous settings intact
+ * - Appends are forced to disk under a file lock; on open, a torn or
+ *   corrupt tail record is truncated away
+ * - Queries read a memory-mapped view of the records; all-time figures are
+ *   folded in incrementally, so a query only touches new records plus the
+ *   trailing window it asks for
+ *
+ * Layout: 64-byte header ("PTHS", version, two 24-byte settings slots of
+ * sequence, flags, reserved, CRC) followed by records of
+ *   epoch millis, passage id hash, edition, difficulty, reserved,
+ *   duration nanos, WPM, accuracy, errors, characters, CRC.
+ */
+public class HistoryStore implements Closeable {
+
+    public static final int DESKTOP = 0, CONSOLE = 1;
+    /** Difficulty of rounds whose passage tier is unknown; also "all" in queries. */
+    public static final int ANY_DIFFICULTY = 3;
+    /** Settings flags. */
+    public static final int LIGHT_MODE = 1, SOUND_OFF = 2, ADAPTIVE_OFF = 4, ALIGN = 8;
+
+    private static final int MAGIC = 0x50544853; // "PTHS"
+    private static final int VERSION = 1;
+    private static final int HEADER = 64, SLOT = 24, SLOTS_AT = 8;
+    static final int RECORD = 48;
+    private static final int TIME = 0, PASSAGE = 8, EDITION = 16, DIFFICULTY = 17, DURATION = 20,
+            WPM = 28, ACCURACY = 32, ERRORS = 36, CHARACTERS = 40, CRC = 44;
+
+    private final FileChannel channel;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32C crc = new CRC32C();
+    private MappedByteBuffer map;
+    private long mappedSize = -1;
+    private int count, aggregated;
+    private final int[] bestIndex = new int[4];
+    private final int[] rounds = new int[4];
+    private final double[] wpmSum = new double[4], accuracySum = new double[4];
+    private long settingsSequence;
+    private int settings = -1;
+
+    private HistoryStore(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /** history.bin in the working directory, or the precisiontyper.history property. */
+    public static Path defaultFile() {
+        return Paths.get(System.getProperty("precisiontyper.history", "history.bin"));
+    }
+
+    /**
+     * Opens (or creates) a history file, repairing a tail left by a crash.
+     * Throws IOException for files that are not history files.
+     */
+    public static HistoryStore open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        HistoryStore store = new HistoryStore(channel);
+        try {
+            FileLock lock = channel.lock();
+            try {
+                store.initialize();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private void initialize() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        if (size < HEADER) {
+            if (size > 0 && channel.read(header, 0) >= 4 && header.getInt(0) != MAGIC) throw new IOException("not a history file");
+            header.clear();
+            header.putInt(MAGIC).putInt(VERSION).clear();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.force(true);
+            size = HEADER;
+        } else {
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC) throw new IOException("not a history file");
+            if (header.getInt(4) != VERSION) throw new IOException("unsupported history version " + header.getInt(4));
+            readSettings(header);
+        }
+        count = (int) repairTail(size);
+    }
+
+    /**
+     * Truncates a torn or corrupt tail left by a crash, so records stay
+     * aligned; returns the number of valid records. Callers hold the lock.
+     */
+    private long repairTail(long size) throws IOException {
+        long records = (size - HEADER) / RECORD;
+        while (records > 0 && !validRecord(records - 1)) records--;
+        long valid = HEADER + records * RECORD;
+        if (valid < size) {
+            channel.truncate(valid);
+            channel.force(true);
+        }
+        return records;
+    }
+
+    private boolean validRecord(long index) throws IOException {
+        record.clear();
+        channel.read(record, HEADER + index * RECORD);
+        return record.getInt(CRC) == checksum(record, 0, CRC);
+    }
+
+    // ---- Settings ----
+
+    public boolean hasSettings() { return settings >= 0; }
+
+    /**
+     * Reads the saved settings flags straight from the header, without the
+     * lock, tail repair or mapping of open(), so a window can be themed
+     * while the store opens elsewhere. Returns defaultFlags when the file is
+     * missing, is not a history file, or has no settings yet.
+     */
+    public static int peekSettings(Path file, int defaultFlags) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0);
+            if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) return defaultFlags;
+            HistoryStore reader = new HistoryStore(null);
+            reader.readSettings(header);
+            return reader.settings(defaultFlags);
+        } catch (IOException e) {
+            return defaultFlags;
+        }
+    }
+
+    /** The saved settings flags, or defaultFlags when none were ever saved. */
+    public int settings(int defaultFlags) { return settings >= 0 ? settings : defaultFlags; }
+
+    /** Saves the flags into the older of the two slots. */
+    public void saveSettings(int flags) throws IOException {
+        FileLock lock = channel.lock();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            readSettings(header);
+            long sequence = settingsSequence + 1;
+            ByteBuffer slot = ByteBuffer.allocate(SLOT).order(ByteOrder.LITTLE_ENDIAN);
+            slot.putLong(sequence).putInt(flags).putLong(0L);
+            slot.putInt(checksum(slot, 0, SLOT - 4)).flip();
+            channel.write(slot, SLOTS_AT + (sequence & 1) * SLOT);
+            channel.force(false);
+            settingsSequence = sequence;
+            settings = flags;
+        } finally {
+            lock.release();
+        }
+    }
+
+    private void readSettings(ByteBuffer header) {
+        for (int s = 0; s < 2; s++) {
+            int at = SLOTS_AT + s * SLOT;
+            long sequence = header.getLong(at);
+            if (sequence > settingsSequence && header.getInt(at + SLOT - 4) == checksum(header, at, SLOT - 4)) {
+                settingsSequence = sequence;
+                settings = header.getInt(at + 8);
+            }
+        }
+    }
+
+    // ---- Rounds ----
+
+    /**
+     * Appends one round and forces it to disk before returning. A torn tail
+     * from a crashed writer is cut first, so the new record stays aligned.
+     */
+    public void append(long epochMillis, String passageId, int edition, int difficulty, long durationNanos,
+                       double wpm, double accuracy, int errors, int characters) throws IOException {
+        FileLock lock = channel.lock();
+        try {
+            long end = HEADER + repairTail(channel.size()) * RECORD;
+            record.clear();
+            record.putLong(TIME, epochMillis).putLong(PASSAGE, idHash(passageId))
+                  .put(EDITION, (byte) edition).put(DIFFICULTY, (byte) difficulty).putShort(18, (short) 0)
+                  .putLong(DURATION, durationNanos).putFloat(WPM, (float) wpm).putFloat(ACCURACY, (float) accuracy)
+                  .putInt(ERRORS, errors).putInt(CHARACTERS, characters);
+            record.putInt(CRC, checksum(record, 0, CRC));
+            record.clear();
+            channel.write(record, end);
+            channel.force(false);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /** Number of rounds, including those appended by other processes. */
+    public int size() throws IOException {
+        refresh();
+        return count;
+    }
+
+    public long timestampAt(int i) { return map.getLong(i * RECORD + TIME); }
+    public long passageHashAt(int i) { return map.getLong(i * RECORD + PASSAGE); }
+    public int editionAt(int i) { return map.get(i * RECORD + EDITION); }
+    public int difficultyAt(int i) { return map.get(i * RECORD + DIFFICULTY); }
+    public long durationNanosAt(int i) { return map.getLong(i * RECORD + DURATION); }
+    public float wpmAt(int i) { return map.getFloat(i * RECORD + WPM); }
+    public float accuracyAt(int i) { return map.getFloat(i * RECORD + ACCURACY); }
+    public int errorsAt(int i) { return map.getInt(i * RECORD + ERRORS); }
+    public int charactersAt(int i) { return map.getInt(i * RECORD + CHARACTERS); }
+
+    /** Index of the fastest round of the difficulty (ANY_DIFFICULTY for all), or -1. */
+    public int personalBest(int difficulty) throws IOException {
+        refresh();
+        return rounds[difficulty] == 0 ? -1 : bestIndex[difficulty];
+    }
+
+    /** Mean WPM and accuracy of the last n rounds of the difficulty. */
+    public Averages trailing(int n, int difficulty) throws IOException {
+        refresh();
+        return average(count, n, difficulty);
+    }
+
+    /**
+     * Per-difficulty trend: the last window rounds against the window
+     * before them, plus the all-time figures of that difficulty.
+     */
+    public Trend trend(int difficulty, int window) throws IOException {
+        refresh();
+        Averages all = rounds[difficulty] == 0 ? new Averages(0, 0, 0, 0)
+                : new Averages(rounds[difficulty], wpmSum[difficulty] / rounds[difficulty], accuracySum[difficulty] / rounds[difficulty], 0);
+        Averages recent = average(count, window, difficulty);
+        Averages previous = recent.rounds < window ? new Averages(0, 0, 0, 0) : average(recent.firstIndex, window, difficulty);
+        return new Trend(all, recent, previous);
+    }
+
+    /** Averages of up to n matching rounds scanning back from index end (exclusive). */
+    private Averages average(int end, int n, int difficulty) {
+        int rounds = 0, first = end;
+        double wpm = 0, accuracy = 0;
+        for (int i = end - 1, at = i * RECORD; i >= 0 && rounds < n; i--, at -= RECORD) {
+            if (difficulty != ANY_DIFFICULTY && map.get(at + DIFFICULTY) != difficulty) continue;
+            wpm += map.getFloat(at + WPM);
+            accuracy += map.getFloat(at + ACCURACY);
+            rounds++;
+            first = i;
+        }
+        return rounds == 0 ? new Averages(0, 0, 0, end) : new Averages(rounds, wpm / rounds, accuracy / rounds, first);
+    }
+
+    /** Mean WPM and accuracy over a run of rounds. */
+    public static final class Averages {
+        public final int rounds;
+        public final double wpm, accuracy;
+        final int firstIndex;
+
+        Averages(int rounds, double wpm, double accuracy, int firstIndex) {
+            this.rounds = rounds;
+            this.wpm = wpm;
+            this.accuracy = accuracy;
+            this.firstIndex = firstIndex;
+        }
+    }
+
+    /** Recent, previous-window and all-time averages of one difficulty. */
+    public static final class Trend {
+        public final Averages allTime, recent, previous;
+
+        Trend(Averages allTime, Averages recent, Averages previous) {
+            this.allTime = allTime;
+            this.recent = recent;
+            this.previous = previous;
+        }
+
+        /** WPM change of the recent window over the previous one; 0 without two full windows. */
+        public double wpmChange() { return previous.rounds == 0 ? 0 : recent.wpm - previous.wpm; }
+    }
+
+    /**
+     * Remaps the record region when the file has changed and folds new
+     * records into the aggregates. Counting stops at the first record whose
+     * CRC does not match, e.g. one another process is still writing; a later
+     * refresh picks it up once it is complete.
+     */
+    private void refresh() throws IOException {
+        long size = channel.size();
+        if (size != mappedSize) {
+            long records = Math.max(0, (size - HEADER) / RECORD);
+            map = channel.map(FileChannel.MapMode.READ_ONLY, HEADER, records * RECORD);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            mappedSize = size;
+            if (records < aggregated) {
+                aggregated = 0;
+                java.util.Arrays.fill(rounds, 0);
+                java.util.Arrays.fill(wpmSum, 0);
+                java.util.Arrays.fill(accuracySum, 0);
+            }
+        }
+        for (int records = map.capacity() / RECORD; aggregated < records; aggregated++) {
+            int at = aggregated * RECORD;
+            if (map.getInt(at + CRC) != checksum(map, at, CRC)) break;
+            int d = difficultyAt(aggregated);
+            if (d >= 0 && d < ANY_DIFFICULTY) fold(d, aggregated);
+            fold(ANY_DIFFICULTY, aggregated);
+        }
+        count = aggregated;
+    }
+
+    private void fold(int d, int i) {
+        float wpm = wpmAt(i);
+        if (rounds[d] == 0 || wpm > wpmAt(bestIndex[d])) bestIndex[d] = i;
+        rounds[d]++;
+        wpmSum[d] += wpm;
+        accuracySum[d] += accuracyAt(i);
+    }
+
+    @Override
+    public void close() {
+        try { channel.close(); } catch (IOException e) {}
+    }
+
+    /** 64-bit FNV-1a of a passage id, stored in place of the id itself. */
+    static long idHash(String passageId) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : passageId.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private int checksum(ByteBuffer buffer, int from, int length) {
+        crc.reset();
+        crc.update(buffer.duplicate().position(from).limit(from + length));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * KeystrokeTimeline:
+ * Records every keystroke of a round into preallocated primitive ring
+ * buffers (nanoTime, char, offset, correct flag) with no boxing and no
+ * per-event objects. Speed and accuracy are derived from these buffers:
+ * - Gross WPM over the round (five characters per word)
+ * - Keystroke accuracy (correct insertions / all insertions)
+ * - Rolling speed over the last N seconds or the last N words
+ * - A histogram of intervals between consecutive insertions
+ */
+public class KeystrokeTimeline {
+
+    /** Character recorded for a deletion; deletions never count as correct. */
+    public static final char DELETE = '\b';
+
+    public static final int BUCKET_MILLIS = 25;
+    public static final int BUCKETS = 40;
+
+    private final int mask;
+    private final long[] times;
+    private final char[] chars;
+    private final int[] offsets;
+    private final boolean[] correct;
+    private final int[] intervalHistogram = new int[BUCKETS + 1];
+
+    private long recorded;
+    private long firstNanos, lastNanos, lastInsertNanos;
+    private int insertions, correctInsertions;
+
+    public KeystrokeTimeline(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mask = size - 1;
+        times = new long[size];
+        chars = new char[size];
+        offsets = new int[size];
+        correct = new boolean[size];
+    }
+
+    public void reset() {
+        recorded = 0;
+        firstNanos = lastNanos = lastInsertNanos = 0;
+        insertions = correctInsertions = 0;
+        java.util.Arrays.fill(intervalHistogram, 0);
+    }
+
+    /** Records one keystroke; c is DELETE for removals. */
+    public void record(long nanoTime, char c, int offset, boolean isCorrect) {
+        int slot = (int)(recorded & mask);
+        times[slot] = nanoTime;
+        chars[slot] = c;
+        offsets[slot] = offset;
+        correct[slot] = isCorrect;
+        if (recorded++ == 0) firstNanos = nanoTime;
+        lastNanos = nanoTime;
+        if (c == DELETE) return;
+        if (insertions > 0) {
+            long millis = (nanoTime - lastInsertNanos) / 1_000_000L;
+            intervalHistogram[(int) Math.min(millis / BUCKET_MILLIS, BUCKETS)]++;
+        }
+        lastInsertNanos = nanoTime;
+        insertions++;
+        if (isCorrect) correctInsertions++;
+    }
+
+    public boolean isEmpty() { return recorded == 0; }
+
+    public long startNanos() { return firstNanos; }
+
+    public long lastNanos() { return lastNanos; }
+
+    /** Number of keystrokes still held in the ring. */
+    public int size() { return (int) Math.min(recorded, mask + 1); }
+
+    public long timeAt(int i) { return times[slot(i)]; }
+
+    public char charAt(int i) { return chars[slot(i)]; }
+
+    public int offsetAt(int i) { return offsets[slot(i)]; }
+
+    public boolean correctAt(int i) { return correct[slot(i)]; }
+
+    /** Gross words per minute from the first keystroke until nowNanos; 0 before any time has passed. */
+    public double wpm(long nowNanos) {
+        long elapsed = nowNanos - firstNanos;
+        if (recorded == 0 || elapsed <= 0) return 0;
+        return (insertions / 5.0) / (elapsed / 60e9);
+    }
+
+    /** Percentage of insertions that matched the target at the time they were typed. */
+    public double accuracy() {
+        return insertions == 0 ? 100.0 : 100.0 * correctInsertions / insertions;
+    }
+
+    /** Insertions that did not match the target when they were typed. */
+    public int errors() { return insertions - correctInsertions; }
+
+    /** Words per minute over the insertions made in the last windowNanos before nowNanos. */
+    public double rollingWpm(long nowNanos, long windowNanos) {
+        long from = nowNanos - windowNanos;
+        int count = 0;
+        for (int i = size() - 1; i >= 0 && times[slot(i)] > from; i--) {
+            if (chars[slot(i)] != DELETE) count++;
+        }
+        return (count / 5.0) / (windowNanos / 60e9);
+    }
+
+    /** Words per minute over the last words * 5 insertions still in the ring. */
+    public double lastWordsWpm(int words) {
+        int wanted = words * 5, count = 0;
+        long newest = 0, oldest = 0;
+        for (int i = size() - 1; i >= 0 && count <= wanted; i--) {
+            if (chars[slot(i)] == DELETE) continue;
+            if (count++ == 0) newest = times[slot(i)];
+            oldest = times[slot(i)];
+        }
+        long span = newest - oldest;
+        return count < 2 || span <= 0 ? 0 : ((count - 1) / 5.0) / (span / 60e9);
+    }
+
+    /** Interval counts in BUCKET_MILLIS buckets; the last bucket collects everything slower. */
+    public int[] intervalHistogram() { return intervalHistogram.clone(); }
+
+    /** Text rendering of the interval histogram for the end-of-round summary. */
+    public String histogramSummary() {
+        int peak = 0, last = -1;
+        for (int i = 0; i <= BUCKETS; i++) {
+            peak = Math.max(peak, intervalHistogram[i]);
+            if (intervalHistogram[i] > 0) last = i;
+        }
+        StringBuilder sb = new StringBuilder("Inter-key intervals:\n");
+        for (int i = 0; i <= last; i++) {
+            String range = i == BUCKETS ? String.format(">=%4d ms", BUCKETS * BUCKET_MILLIS)
+                    : String.format("%4d-%3d ms", i * BUCKET_MILLIS, (i + 1) * BUCKET_MILLIS);
+            int bar = peak == 0 ? 0 : (int) Math.ceil(30.0 * intervalHistogram[i] / peak);
+            sb.append(String.format("%-11s %4d %s%n", range, intervalHistogram[i], "#".repeat(bar)));
+        }
+        return sb.toString();
+    }
+
+    private int slot(int i) {
+        return (int)((recorded - size() + i) & mask);
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram:
+ * Lock-free log-linear histogram in the style of HdrHistogram, safe to
+ * record into from any thread (EDT, audio thread, probes) while JMX or a
+ * dump reads it.
+ * - Values below 64 get exact buckets; above that, every power of two is
+ *   split into 32 sub-buckets, so quantiles are within about 3%
+ * - A fixed AtomicLongArray of 1,184 counters covers 0 to 2^41 (about 36
+ *   minutes in nanoseconds); larger values land in the last bucket
+ * - Recording is one atomic increment plus a LongAdder add and a max CAS
+ *   that almost never retries, and allocates nothing
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5, SUB = 1 << SUB_BITS, LINEAR = 2 * SUB;
+    private static final int BUCKETS = LINEAR + (41 - SUB_BITS) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder(), sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    static int bucket(long value) {
+        if (value < LINEAR) return (int) Math.max(0, value);
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return Math.min(BUCKETS - 1, LINEAR + (shift - 1) * SUB + (int) (value >>> shift) - SUB);
+    }
+
+    /** Largest value that falls into the bucket. */
+    static long highestValue(int bucket) {
+        if (bucket < LINEAR) return bucket;
+        int shift = (bucket - LINEAR) / SUB + 1;
+        long sub = (bucket - LINEAR) % SUB + SUB;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public void record(long value) {
+        counts.getAndIncrement(bucket(value));
+        total.increment();
+        sum.add(value);
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) m = max.get();
+    }
+
+    public long count() { return total.sum(); }
+
+    public long max() { return max.get(); }
+
+    public double mean() {
+        long n = total.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /** Value at or below which the given percentage (0-100) of recorded values fall. */
+    public long percentile(double percent) {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) n += counts.get(i);
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * n)), seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(highestValue(i), max.get());
+        }
+        return max.get();
+    }
+
+    /** Clears the histogram; values recorded concurrently may land on either side. */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        total.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /** One summary row: count, mean, p50, p90, p99, p99.9 and max, divided by scale. */
+    public String row(String label, double scale) {
+        return String.format("%-26s %8d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f", label, count(), mean() / scale,
+                percentile(50) / scale, percentile(90) / scale, percentile(99) / scale, percentile(99.9) / scale, max() / scale);
+    }
+
+    static String header(String unit) {
+        return String.format("%-26s %8s %9s %9s %9s %9s %9s %9s", "(" + unit + ")", "count", "mean", "p50", "p90", "p99", "p99.9", "max");
+    }
+}
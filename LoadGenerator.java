@@ -0,0 +1,395 @@
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
+import java.awt.KeyboardFocusManager;
+import java.awt.Toolkit;
+import java.awt.event.KeyEvent;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import javax.management.ObjectName;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+
+/**
+ * LoadGenerator:
+ * Runs BotTypist bots, one virtual thread each, against the typing logic
+ * and reports throughput, tail latency and how many typists a core carries.
+ * - Default: every bot plays rounds through its own TypingEngine, the
+ *   scoring behind both front ends; latency runs from a key's scheduled
+ *   time until it is scored, so a backlog counts against the system
+ * - --server host:port races the bots on a RaceServer over TCP, --server
+ *   local on one started in this JVM; latency runs from sending a key
+ *   until a progress frame shows it
+ * - --window has one bot type into a real PrecisionTyper window through
+ *   posted key events, then prints the window's own TypingMetrics
+ *   (needs a display); its history, weakness model and session log live
+ *   in a temporary directory, deleted on exit
+ * - --speed scales time: 1 is real time, 10 types ten times as fast, 0
+ *   types flat out to find the CPU bound
+ * - Bot speeds spread around --wpm; --seed makes a run reproducible
+ *
+ * Typists per core is simulated typing time over the CPU time this JVM
+ * used, bots included.
+ *
+ * Usage:
+ *   javac -d out -sourcepath . LoadGenerator.java
+ *   java -cp out LoadGenerator [--bots n] [--seconds s] [--speed x] [--wpm w] [--wpm-spread w]
+ *       [--errors p] [--seed n] [--server host:port|local] [--race-size n] [--window]
+ *       [--collection c] [--difficulty d] [--corpus dir]
+ */
+public class LoadGenerator {
+
+    private final BotTypist.Profile profile = new BotTypist.Profile();
+    private int bots = 1000, raceSize = 4;
+    private double seconds = 10, speed = 1, wpmSpread = 15;
+    private long seed = 1;
+    private String server;
+    private boolean window, localServer;
+    private String[] texts;
+    private long deadline;
+
+    private final LatencyHistogram latency = new LatencyHistogram(), lag = new LatencyHistogram();
+    private final LongAdder keystrokes = new LongAdder(), rounds = new LongAdder(), completed = new LongAdder();
+    private final LongAdder simulatedNanos = new LongAdder(), failures = new LongAdder();
+    private final DoubleAdder completedWpm = new DoubleAdder();
+
+    private static final String USAGE = "Usage: LoadGenerator [--bots n] [--seconds s] [--speed x] [--wpm w] [--wpm-spread w]\n"
+            + "    [--errors p] [--seed n] [--server host:port|local] [--race-size n] [--window]\n"
+            + "    [--collection c] [--difficulty d] [--corpus dir]";
+
+    /** Prints the problem and the usage, and exits. */
+    private static void usage(String problem) {
+        System.out.println(problem);
+        System.out.println(USAGE);
+        System.exit(2);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator load = new LoadGenerator();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            try {
+                switch (option) {
+                    case "--bots": load.bots = Integer.parseInt(args[++i]); break;
+                    case "--seconds": load.seconds = Double.parseDouble(args[++i]); break;
+                    case "--speed": load.speed = Double.parseDouble(args[++i]); break;
+                    case "--wpm": load.profile.wpm = Double.parseDouble(args[++i]); break;
+                    case "--wpm-spread": load.wpmSpread = Double.parseDouble(args[++i]); break;
+                    case "--errors": load.profile.errorRate = Double.parseDouble(args[++i]); break;
+                    case "--seed": load.seed = Long.parseLong(args[++i]); break;
+                    case "--server": load.server = args[++i]; break;
+                    case "--race-size": load.raceSize = Integer.parseInt(args[++i]); break;
+                    case "--window": load.window = true; break;
+                    case "--collection": case "--difficulty": case "--corpus": // passage options for TypeRacerGame.fromArgs
+                        if (++i == args.length) usage(option + " needs a value");
+                        break;
+                    default: usage("Unknown option " + option);
+                }
+            } catch (ArrayIndexOutOfBoundsException e) {
+                usage(option + " needs a value");
+            } catch (NumberFormatException e) {
+                usage("Bad value for " + option + ": " + args[i]);
+            }
+        }
+        if (load.window) {
+            load.window();
+            return;
+        }
+        TypeRacerGame pool = TypeRacerGame.fromArgs(args, true);
+        if (pool.sentences.length == 0) {
+            System.out.println("No single-line passages in that collection and difficulty.");
+            System.exit(1);
+        }
+        load.texts = pool.sentences;
+        RaceServer local = null;
+        if ("local".equals(load.server)) {
+            local = new RaceServer(pool.passageIds, pool.sentences, load.raceSize, 100);
+            RaceServer started = local;
+            Thread.ofPlatform().daemon().name("race-server").start(() -> {
+                try { started.serve(0); } catch (IOException e) { System.out.println("Race server failed: " + e.getMessage()); }
+            });
+            while (local.port() <= 0) Thread.sleep(10);
+            load.server = "localhost:" + local.port();
+            load.localServer = true;
+        }
+        load.run();
+        if (local != null) local.close();
+    }
+
+    private void run() throws InterruptedException {
+        System.out.printf("%d bots at %.0f WPM (spread %.0f), %.0f%% typos, %s for %.0f s, %s%n", bots, profile.wpm, wpmSpread,
+                profile.errorRate * 100, speed > 0 ? speed + "x real time" : "flat out", seconds,
+                server == null ? "TypingEngine in this JVM" : "RaceServer at " + server);
+        com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long cpuStart = os.getProcessCpuTime(), start = System.nanoTime();
+        deadline = start + (long) (seconds * 1e9);
+        List<Thread> threads = new ArrayList<>(bots);
+        for (int i = 0; i < bots; i++) {
+            int index = i;
+            threads.add(Thread.ofVirtual().name("bot-" + i).start(() -> {
+                try {
+                    if (server == null) engineBot(index); else serverBot(index);
+                } catch (IOException | RuntimeException e) {
+                    failures.increment();
+                }
+            }));
+        }
+        for (Thread t : threads) t.join();
+        double wall = (System.nanoTime() - start) / 1e9, cpu = (os.getProcessCpuTime() - cpuStart) / 1e9;
+
+        long keys = keystrokes.sum(), done = completed.sum();
+        System.out.printf("%d keystrokes in %.1f s: %.0f keystrokes/s, %d rounds (%d completed at %.1f WPM scored)%s%n",
+                keys, wall, keys / wall, rounds.sum(), done, done == 0 ? 0 : completedWpm.sum() / done,
+                failures.sum() == 0 ? "" : ", " + failures.sum() + " bots failed");
+        System.out.println(LatencyHistogram.header("us"));
+        System.out.println(latency.row(server == null ? "key -> scored" : "key -> progress frame", 1e3));
+        if (server != null && speed > 0) System.out.println(lag.row("schedule lag", 1e3));
+        System.out.printf("CPU: %.2f of %d cores busy%n", cpu / wall, Runtime.getRuntime().availableProcessors());
+        if (server == null || localServer) {
+            System.out.printf("Capacity: %.0f typists per core (seconds of simulated typing per CPU second)%n", simulatedNanos.sum() / 1e9 / cpu);
+        }
+    }
+
+    private BotTypist newBot(int index, Random random) {
+        double wpm = Math.max(10, profile.wpm + wpmSpread * random.nextGaussian());
+        return new BotTypist(seed * 1_000_003L + index, profile.at(wpm));
+    }
+
+    /**
+     * Waits until the key's scheduled time and returns it, or now when typing
+     * flat out; returns -1 for a key due after the end of the run.
+     */
+    private long pace(long scheduled, long delay) {
+        if (speed <= 0) return System.nanoTime();
+        scheduled += (long) (delay / speed);
+        if (scheduled > deadline) return -1;
+        for (long now; (now = System.nanoTime()) < scheduled; ) LockSupport.parkNanos(scheduled - now);
+        return scheduled;
+    }
+
+    // ---- Bots ----
+
+    /** Plays rounds on a private TypingEngine; the engine sees the bot's simulated clock. */
+    private void engineBot(int index) {
+        Random random = new Random(seed + index);
+        BotTypist bot = newBot(index, random);
+        TypingEngine engine = new TypingEngine(256);
+        long keys = 0, simulated = 0, scheduled = System.nanoTime();
+        while (scheduled >= 0 && System.nanoTime() < deadline) {
+            engine.reset(texts[random.nextInt(texts.length)], false);
+            rounds.increment();
+            char c;
+            while ((c = bot.next(engine)) != BotTypist.DONE) {
+                if ((scheduled = pace(scheduled, bot.delayNanos())) < 0) break;
+                simulated += bot.delayNanos();
+                if (c == KeystrokeTimeline.DELETE) engine.onBackspace(simulated); else engine.onKey(c, simulated);
+                long now = System.nanoTime();
+                latency.record(now - scheduled);
+                keys++;
+                if (now >= deadline) break;
+            }
+            if (engine.isComplete()) {
+                completed.increment();
+                completedWpm.add(engine.wpm(simulated));
+            }
+        }
+        keystrokes.add(keys);
+        simulatedNanos.add(simulated);
+    }
+
+    /**
+     * Joins races until the run ends, typing each passage with I and D
+     * messages. A second virtual thread reads the race's progress frames.
+     */
+    private void serverBot(int index) throws IOException {
+        int colon = server.lastIndexOf(':');
+        Random random = new Random(seed + index);
+        BotTypist bot = newBot(index, random);
+        TypingEngine engine = new TypingEngine(256);
+        long keys = 0, simulated = 0;
+        try (Socket socket = new Socket(server.substring(0, colon), Integer.parseInt(server.substring(colon + 1)))) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 256);
+            String self = null;
+            while (System.nanoTime() < deadline) {
+                out.write("JOIN bot" + index + "\n");
+                out.flush();
+                String target = null, message;
+                while ((message = in.readLine()) != null && !message.equals("GO")) {
+                    if (message.startsWith("WELCOME ")) self = message.substring(8);
+                    else if (message.startsWith("TEXT ")) target = message.substring(5);
+                }
+                if (message == null || target == null) break;
+                engine.reset(target, false);
+                rounds.increment();
+                RaceView race = new RaceView(self, target.length());
+                Thread reader = Thread.ofVirtual().name("bot-" + index + "-in").start(() -> race.read(in));
+                long scheduled = System.nanoTime();
+                char c;
+                while (!race.ended && System.nanoTime() < deadline && (c = bot.next(engine)) != BotTypist.DONE) {
+                    if ((scheduled = pace(scheduled, bot.delayNanos())) < 0) break;
+                    simulated += bot.delayNanos();
+                    int at = engine.typedLength();
+                    if (c == KeystrokeTimeline.DELETE) {
+                        engine.onBackspace(simulated);
+                        out.write("D " + (at - 1) + " 1\n");
+                    } else {
+                        engine.onKey(c, simulated);
+                        out.write("I " + at + " " + c + "\n");
+                    }
+                    out.flush();
+                    long sent = System.nanoTime();
+                    if (speed > 0) lag.record(Math.max(0, sent - scheduled));
+                    race.sent(sent, engine.correctCount());
+                    keys++;
+                }
+                if (engine.isComplete()) {
+                    completed.increment();
+                    completedWpm.add(engine.wpm(simulated));
+                }
+                if (scheduled < 0 || System.nanoTime() >= deadline) break;
+                try { reader.join(); } catch (InterruptedException e) { break; }
+                if (!race.ended) break;
+            }
+            out.write("QUIT\n");
+            out.flush();
+        } finally {
+            keystrokes.add(keys);
+            simulatedNanos.add(simulated);
+        }
+    }
+
+    /**
+     * One bot's view of a race: keys sent and the correct count each should
+     * produce, matched against this racer's count in progress frames.
+     */
+    private final class RaceView {
+        private final String prefix;
+        private final long[] sentAt;
+        private final int[] expected;
+        private int head, tail, lastCorrect;
+        volatile boolean ended;
+
+        RaceView(String self, int length) {
+            prefix = " " + self + ":";
+            sentAt = new long[length + 1];
+            expected = new int[length + 1];
+        }
+
+        /** A key went out; keys that did not raise the count are not waited for. */
+        synchronized void sent(long nanos, int correct) {
+            while (tail > head && expected[tail - 1] > correct) tail--; // a backspace took those back
+            if (correct > lastCorrect) {
+                if (tail == sentAt.length) { // pending counts rise, so at most length of them are left
+                    System.arraycopy(sentAt, head, sentAt, 0, tail - head);
+                    System.arraycopy(expected, head, expected, 0, tail - head);
+                    tail -= head;
+                    head = 0;
+                }
+                sentAt[tail] = nanos;
+                expected[tail++] = correct;
+            }
+            lastCorrect = correct;
+        }
+
+        synchronized void shown(int correct, long now) {
+            while (head < tail && expected[head] <= correct) latency.record(now - sentAt[head++]);
+        }
+
+        void read(BufferedReader in) {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("T ")) {
+                        int at = line.indexOf(prefix);
+                        if (at < 0) continue;
+                        int from = at + prefix.length(), to = line.indexOf(' ', from);
+                        shown(Integer.parseInt(line, from, to < 0 ? line.length() : to, 10), System.nanoTime());
+                    } else if (line.startsWith("END")) {
+                        ended = true;
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                // the bot closed its socket at the end of the run
+            }
+        }
+    }
+
+    // ---- Window ----
+
+    /**
+     * Types one passage into a PrecisionTyper window, stopping short of its
+     * last key so no result dialog opens, and prints the window's metrics.
+     */
+    private void window() throws Exception {
+        if (GraphicsEnvironment.isHeadless()) {
+            System.out.println("--window needs a display; try xvfb-run.");
+            System.exit(1);
+        }
+        // The bot's rounds must not reach the user's history, weakness model or session logs.
+        Path data = Files.createTempDirectory("loadgenerator-window");
+        Path history = data.resolve("history.bin");
+        try (HistoryStore store = HistoryStore.open(history)) {
+            store.saveSettings(HistoryStore.peekSettings(HistoryStore.defaultFile(), 0)); // also keeps a legacy config.txt from being migrated away
+        }
+        System.setProperty("precisiontyper.history", history.toString());
+        System.setProperty("precisiontyper.weakness", data.resolve("weakness.bin").toString());
+        System.setProperty("precisiontyper.sessions", data.resolve("sessions").toString());
+        PrecisionTyper[] typer = new PrecisionTyper[1];
+        SwingUtilities.invokeAndWait(() -> typer[0] = new PrecisionTyper((Path) null));
+        Component area;
+        while (!((area = KeyboardFocusManager.getCurrentKeyboardFocusManager().getFocusOwner()) instanceof JTextArea)) Thread.sleep(20);
+        String[] target = new String[1];
+        SwingUtilities.invokeAndWait(() -> target[0] = typer[0].targetText());
+
+        BotTypist bot = newBot(0, new Random(seed));
+        TypingEngine engine = new TypingEngine(256); // mirrors the window's state from the keys it was sent
+        engine.reset(target[0], false);
+        EventQueue queue = Toolkit.getDefaultToolkit().getSystemEventQueue();
+        long scheduled = System.nanoTime(), simulated = 0;
+        deadline = scheduled + (long) (seconds * 1e9);
+        char c;
+        while (System.nanoTime() < deadline && (c = bot.next(engine)) != BotTypist.DONE) {
+            if (engine.firstErrorIndex() < 0 && engine.typedLength() == target[0].length() - 1 && c != KeystrokeTimeline.DELETE) break;
+            if ((scheduled = pace(scheduled, bot.delayNanos())) < 0) break;
+            simulated += bot.delayNanos();
+            long when = System.currentTimeMillis();
+            if (c == KeystrokeTimeline.DELETE) {
+                engine.onBackspace(simulated);
+                queue.postEvent(new KeyEvent(area, KeyEvent.KEY_PRESSED, when, 0, KeyEvent.VK_BACK_SPACE, '\b'));
+            } else {
+                engine.onKey(c, simulated);
+                if (c == '\n') queue.postEvent(new KeyEvent(area, KeyEvent.KEY_PRESSED, when, 0, KeyEvent.VK_ENTER, c));
+                else if (c == '\t') queue.postEvent(new KeyEvent(area, KeyEvent.KEY_PRESSED, when, 0, KeyEvent.VK_TAB, c));
+                else queue.postEvent(new KeyEvent(area, KeyEvent.KEY_TYPED, when, 0, KeyEvent.VK_UNDEFINED, c));
+            }
+            lag.record(Math.max(0, System.nanoTime() - scheduled));
+            keystrokes.increment();
+        }
+        SwingUtilities.invokeAndWait(() -> {}); // let the posted keys drain
+        Thread.sleep(500); // and their frames paint
+        System.out.printf("%d keystrokes posted at %sx real time%n", keystrokes.sum(), speed);
+        System.out.println(LatencyHistogram.header("us"));
+        System.out.println(lag.row("schedule lag", 1e3));
+        System.out.println(ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(TypingMetrics.OBJECT_NAME), "Summary"));
+        SwingUtilities.invokeAndWait(typer[0]::close);
+        try (Stream<Path> files = Files.walk(data)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+        System.exit(0);
+    }
+}
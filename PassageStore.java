@@ -0,0 +1,481 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * PassageStore:
+ * An indexed, lazily materialized view of the passage library.
+ * - texts.json (schema v3) is memory-mapped and parsed in one streaming pass
+ * - Only byte offsets are kept, grouped by (collection, difficulty)
+ * - Passage strings are decoded when a passage is actually selected
+ * - An optional corpus directory adds large plain-text files the same way
+ *
+ * Corpus files are UTF-8 text with passages separated by blank lines. A file
+ * named {@code <collection>.<difficulty>.txt} fills that pool; any other
+ * {@code .txt} file becomes collection {@code <name>}, with each passage
+ * placed in the tier its DifficultyScorer score falls into. A file named
+ * {@code <name>.book.txt} is one long passage instead (book mode): the lines
+ * of each paragraph are joined with spaces and paragraphs end in a line break.
+ */
+public class PassageStore {
+
+    public static final String[] COLLECTIONS = {"general", "calm", "quotes", "code"};
+    public static final String[] DIFFICULTIES = {"easy", "medium", "hard"};
+
+    private static final int SCHEMA_VERSION = 3;
+    private static final byte JSON = 0, PLAIN = 1, BOOK = 2;
+
+    private final List<ByteBuffer> sources = new ArrayList<>();
+    private final List<String> sourceNames = new ArrayList<>();
+    private final List<String> collections = new ArrayList<>();
+    private int[][] pools = new int[0][];
+    private int[] poolSizes = new int[0];
+    private int[] unscored = new int[0];
+    private int unscoredCount;
+
+    private int count;
+    private byte[] kind = new byte[256];
+    private short[] source = new short[256];
+    private short[] collection = new short[256];
+    private byte[] difficulty = new byte[256];
+    private int[] start = new int[256], end = new int[256];
+    private int[] idStart = new int[256], idEnd = new int[256];
+
+    /**
+     * Loads texts.json and, when corpusDir is not null, every .txt file in it.
+     * Throws IOException with a user-facing message when the library is
+     * missing or does not match schema v3.
+     */
+    public static PassageStore load(Path textsJson, Path corpusDir) throws IOException {
+        PassageStore store = new PassageStore();
+        for (String c : COLLECTIONS) store.collectionIndex(c);
+        store.indexJson(textsJson);
+        if (corpusDir != null) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(corpusDir, "*.txt")) {
+                List<Path> sorted = new ArrayList<>();
+                files.forEach(sorted::add);
+                Collections.sort(sorted);
+                for (Path file : sorted) store.indexPlain(file);
+            }
+        }
+        if (store.unscoredCount > 0) {
+            int[] passages = Arrays.copyOf(store.unscored, store.unscoredCount);
+            int[] scores = new DifficultyScorer().scoreAll(store, passages);
+            for (int i = 0; i < passages.length; i++) store.addToPool(passages[i], DifficultyScorer.tier(scores[i]));
+            store.unscored = null;
+        }
+        for (String c : COLLECTIONS) {
+            for (String d : DIFFICULTIES) {
+                if (store.poolSize(c, d) == 0) throw new IOException("texts.json has no " + c + "/" + d + " passages.");
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Finds texts.json: the precisiontyper.texts system property, then
+     * PrecisionTyper/texts.json or texts.json relative to the working
+     * directory, then the same paths next to the compiled classes.
+     */
+    public static Path locateTexts() throws IOException {
+        String configured = System.getProperty("precisiontyper.texts");
+        if (configured != null) return Paths.get(configured);
+        List<Path> roots = new ArrayList<>();
+        roots.add(Paths.get("").toAbsolutePath());
+        try {
+            Path classes = Paths.get(PassageStore.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            roots.add(classes);
+            if (classes.getParent() != null) roots.add(classes.getParent());
+        } catch (Exception e) {}
+        for (Path root : roots) {
+            for (Path candidate : new Path[]{root.resolve("PrecisionTyper").resolve("texts.json"), root.resolve("texts.json")}) {
+                if (Files.isRegularFile(candidate)) return candidate;
+            }
+        }
+        throw new IOException("PrecisionTyper/texts.json was not found. Run from the project folder, "
+                + "or pass -Dprecisiontyper.texts=/path/to/texts.json.");
+    }
+
+    /** Collections in index order: the four built-in ones first, then corpus collections. */
+    public List<String> collections() { return Collections.unmodifiableList(collections); }
+
+    public int size() { return count; }
+
+    public int poolSize(String collection, String difficulty) {
+        int pool = poolIndex(collection, difficulty);
+        return pool < 0 ? 0 : poolSizes[pool];
+    }
+
+    /** Handle of the index-th passage in a pool. */
+    public int passage(String collection, String difficulty, int index) {
+        int pool = poolIndex(collection, difficulty);
+        if (pool < 0 || index < 0 || index >= poolSizes[pool]) throw new IndexOutOfBoundsException(collection + "/" + difficulty + " #" + index);
+        return pools[pool][index];
+    }
+
+    /** Handles of every passage in a collection, across all difficulties. */
+    public int[] passages(String collection) {
+        int c = collections.indexOf(collection), n = 0;
+        if (c < 0) return new int[0];
+        for (int d = 0; d < DIFFICULTIES.length; d++) n += poolSizes[c * DIFFICULTIES.length + d];
+        int[] all = new int[n];
+        n = 0;
+        for (int d = 0; d < DIFFICULTIES.length; d++) {
+            int pool = c * DIFFICULTIES.length + d;
+            System.arraycopy(pools[pool], 0, all, n, poolSizes[pool]);
+            n += poolSizes[pool];
+        }
+        return all;
+    }
+
+    private int poolIndex(String collection, String difficulty) {
+        int c = collections.indexOf(collection), d = Arrays.asList(DIFFICULTIES).indexOf(difficulty);
+        return c < 0 || d < 0 ? -1 : c * DIFFICULTIES.length + d;
+    }
+
+    public String collectionOf(int passage) { return collections.get(collection[passage]); }
+
+    public String difficultyOf(int passage) { return DIFFICULTIES[difficulty[passage]]; }
+
+    /** Decodes a passage's text; this is the only place passage strings are created. */
+    public String text(int passage) {
+        ByteBuffer buf = sources.get(source[passage]);
+        if (kind[passage] == BOOK) return decodeBook(buf, start[passage], end[passage]);
+        return kind[passage] == JSON ? decodeJson(buf, start[passage], end[passage]) : decodeUtf8(buf, start[passage], end[passage]);
+    }
+
+    /**
+     * The text the user types. Like the Web Edition, a Quote without dialogue
+     * punctuation is shown inside one outer pair of typographic quotes.
+     */
+    public String typingText(int passage) {
+        String text = text(passage);
+        if (collectionOf(passage).equals("quotes") && text.indexOf('\u201C') < 0 && text.indexOf('\u201D') < 0) {
+            return "\u201C" + text + "\u201D";
+        }
+        return text;
+    }
+
+    /** Stable passage id: the texts.json id, or {@code file.txt#n} for corpus passages. */
+    public String id(int passage) {
+        if (kind[passage] != JSON) return sourceNames.get(source[passage]) + "#" + idStart[passage];
+        return decodeJson(sources.get(source[passage]), idStart[passage], idEnd[passage]);
+    }
+
+    // --- texts.json streaming index ---
+
+    private void indexJson(Path file) throws IOException {
+        ByteBuffer buf = map(file);
+        short src = addSource(file, buf);
+        Cursor in = new Cursor(buf);
+        boolean schemaChecked = false;
+        in.expect('{');
+        while (in.nextMember()) {
+            if (in.keyEquals("schemaVersion")) {
+                in.next();
+                if (in.readInt() != SCHEMA_VERSION) throw new IOException("texts.json must use schema v" + SCHEMA_VERSION + ".");
+                schemaChecked = true;
+            } else if (in.keyEquals("collections")) {
+                indexCollections(in, src);
+            } else {
+                in.next();
+                in.skipValue();
+            }
+        }
+        if (!schemaChecked) throw new IOException("texts.json has no schemaVersion.");
+    }
+
+    private void indexCollections(Cursor in, short src) throws IOException {
+        in.expect('{');
+        while (in.nextMember()) {
+            short c = collectionIndex(in.keyString());
+            in.expect('{');
+            while (in.nextMember()) {
+                int d = difficultyIndex(in.keyString());
+                in.expect('[');
+                while (in.nextElement()) {
+                    int textStart = -1, textEnd = -1, idS = -1, idE = -1;
+                    in.expect('{');
+                    while (in.nextMember()) {
+                        boolean isText = in.keyEquals("text"), isId = in.keyEquals("id");
+                        int b = in.next();
+                        if (isText || isId) {
+                            if (b != '"') throw new IOException("Passage " + (isText ? "text" : "id") + " must be a string.");
+                            int s = in.pos, e = in.skipStringBody();
+                            if (isText) { textStart = s; textEnd = e; } else { idS = s; idE = e; }
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                    if (textStart < 0 || idS < 0) throw new IOException("A " + collections.get(c) + "/" + DIFFICULTIES[d] + " passage is missing its id or text.");
+                    add(JSON, src, c, d, textStart, textEnd, idS, idE);
+                }
+            }
+        }
+    }
+
+    // --- plain-text corpus index ---
+
+    private void indexPlain(Path file) throws IOException {
+        ByteBuffer buf = map(file);
+        short src = addSource(file, buf);
+        String name = file.getFileName().toString();
+        String base = name.substring(0, name.length() - 4);
+        // A collection is only created with its first passage, so a blank file adds no empty one
+        if (base.endsWith(".book")) {
+            for (int i = 0; i < buf.limit(); i++) {
+                byte b = buf.get(i);
+                if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                    add(BOOK, src, collectionIndex(base.substring(0, base.length() - 5)), -1, 0, buf.limit(), 0, 0);
+                    return;
+                }
+            }
+            return;
+        }
+        int dot = base.lastIndexOf('.');
+        int d = dot < 0 ? -1 : Arrays.asList(DIFFICULTIES).indexOf(base.substring(dot + 1));
+        String collectionName = d < 0 ? base : base.substring(0, dot);
+        short c = -1;
+
+        int limit = buf.limit(), ordinal = 0, passageStart = -1, lineStart = 0, lastContentEnd = 0;
+        for (int i = 0; i <= limit; i++) {
+            if (i < limit && buf.get(i) != '\n') continue;
+            boolean blank = true;
+            for (int j = lineStart; j < i; j++) {
+                byte b = buf.get(j);
+                if (b != ' ' && b != '\t' && b != '\r') { blank = false; break; }
+            }
+            if (!blank) {
+                if (passageStart < 0) passageStart = lineStart;
+                lastContentEnd = i > lineStart && buf.get(i - 1) == '\r' ? i - 1 : i;
+            } else if (passageStart >= 0) {
+                if (c < 0) c = collectionIndex(collectionName);
+                add(PLAIN, src, c, d, passageStart, lastContentEnd, ordinal++, 0);
+                passageStart = -1;
+            }
+            lineStart = i + 1;
+        }
+        if (passageStart >= 0) add(PLAIN, src, c < 0 ? collectionIndex(collectionName) : c, d, passageStart, lastContentEnd, ordinal, 0);
+    }
+
+    // --- index bookkeeping ---
+
+    private void add(byte k, short src, short c, int d, int s, int e, int idS, int idE) {
+        if (count == start.length) {
+            int n = count * 2;
+            kind = Arrays.copyOf(kind, n); source = Arrays.copyOf(source, n);
+            collection = Arrays.copyOf(collection, n); difficulty = Arrays.copyOf(difficulty, n);
+            start = Arrays.copyOf(start, n); end = Arrays.copyOf(end, n);
+            idStart = Arrays.copyOf(idStart, n); idEnd = Arrays.copyOf(idEnd, n);
+        }
+        kind[count] = k; source[count] = src; collection[count] = c;
+        start[count] = s; end[count] = e; idStart[count] = idS; idEnd[count] = idE;
+        int passage = count++;
+        if (d >= 0) {
+            addToPool(passage, d);
+        } else {
+            if (unscoredCount == unscored.length) unscored = Arrays.copyOf(unscored, Math.max(64, unscoredCount * 2));
+            unscored[unscoredCount++] = passage;
+        }
+    }
+
+    private void addToPool(int passage, int d) {
+        difficulty[passage] = (byte) d;
+        int pool = collection[passage] * DIFFICULTIES.length + d;
+        int size = poolSizes[pool];
+        if (size == pools[pool].length) pools[pool] = Arrays.copyOf(pools[pool], Math.max(16, size * 2));
+        pools[pool][size] = passage;
+        poolSizes[pool] = size + 1;
+    }
+
+    private short collectionIndex(String name) {
+        int i = collections.indexOf(name);
+        if (i < 0) {
+            collections.add(name);
+            i = collections.size() - 1;
+            int n = collections.size() * DIFFICULTIES.length;
+            pools = Arrays.copyOf(pools, n);
+            for (int p = n - DIFFICULTIES.length; p < n; p++) pools[p] = new int[0];
+            poolSizes = Arrays.copyOf(poolSizes, n);
+        }
+        return (short) i;
+    }
+
+    private static int difficultyIndex(String name) throws IOException {
+        int i = Arrays.asList(DIFFICULTIES).indexOf(name);
+        if (i < 0) throw new IOException("Unknown difficulty in texts.json: " + name);
+        return i;
+    }
+
+    private short addSource(Path file, ByteBuffer buf) {
+        sources.add(buf);
+        sourceNames.add(file.getFileName().toString());
+        return (short)(sources.size() - 1);
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException(file + " is larger than 2 GB.");
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    // --- decoding ---
+
+    private static String decodeUtf8(ByteBuffer buf, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buf.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8).replace("\r\n", "\n");
+    }
+
+    /** Decodes a book file, reflowing hard-wrapped paragraphs into single lines. */
+    private static String decodeBook(ByteBuffer buf, int from, int to) {
+        String raw = decodeUtf8(buf, from, to);
+        StringBuilder out = new StringBuilder(raw.length());
+        boolean paragraphEnd = false;
+        for (int lineStart = 0, i = 0; i <= raw.length(); i++) {
+            if (i < raw.length() && raw.charAt(i) != '\n') continue;
+            String line = raw.substring(lineStart, i).strip();
+            lineStart = i + 1;
+            if (line.isEmpty()) {
+                paragraphEnd = out.length() > 0;
+            } else {
+                if (out.length() > 0) out.append(paragraphEnd ? '\n' : ' ');
+                out.append(line);
+                paragraphEnd = false;
+            }
+        }
+        return out.toString();
+    }
+
+    /** Decodes the body of a JSON string literal (UTF-8, with escapes) between two byte offsets. */
+    private static String decodeJson(ByteBuffer buf, int from, int to) {
+        char[] out = new char[to - from];
+        int n = 0;
+        for (int i = from; i < to; ) {
+            int b = buf.get(i++) & 0xFF;
+            if (b == '\\') {
+                int e = buf.get(i++);
+                switch (e) {
+                    case 'n': out[n++] = '\n'; break;
+                    case 't': out[n++] = '\t'; break;
+                    case 'r': out[n++] = '\r'; break;
+                    case 'b': out[n++] = '\b'; break;
+                    case 'f': out[n++] = '\f'; break;
+                    case 'u':
+                        int code = 0;
+                        for (int k = 0; k < 4; k++) code = (code << 4) | Character.digit(buf.get(i++), 16);
+                        out[n++] = (char) code;
+                        break;
+                    default: out[n++] = (char) e;
+                }
+            } else if (b < 0x80) {
+                out[n++] = (char) b;
+            } else {
+                int extra = b >= 0xF0 ? 3 : b >= 0xE0 ? 2 : 1;
+                int cp = b & (0x3F >> extra);
+                for (int k = 0; k < extra; k++) cp = (cp << 6) | (buf.get(i++) & 0x3F);
+                n += Character.toChars(cp, out, n);
+            }
+        }
+        return new String(out, 0, n);
+    }
+
+    /** Minimal forward-only JSON cursor over a mapped buffer; it never builds a tree. */
+    private static final class Cursor {
+        private final ByteBuffer buf;
+        private int pos;
+        private int keyStart, keyEnd;
+
+        Cursor(ByteBuffer buf) { this.buf = buf; }
+
+        void expect(char c) throws IOException {
+            if (next() != c) throw new IOException("texts.json is not valid JSON near byte " + (pos - 1) + ".");
+        }
+
+        /** Skips whitespace and returns the next significant byte, consuming it. */
+        int next() throws IOException {
+            while (pos < buf.limit()) {
+                int b = buf.get(pos++);
+                if (b != ' ' && b != '\n' && b != '\r' && b != '\t') return b;
+            }
+            throw new IOException("texts.json ends unexpectedly.");
+        }
+
+        private int peek() throws IOException {
+            int b = next();
+            pos--;
+            return b;
+        }
+
+        /** Advances to the next "key": of the current object; false at its closing brace. */
+        boolean nextMember() throws IOException {
+            int b = next();
+            if (b == ',') b = next();
+            if (b == '}') return false;
+            if (b != '"') throw new IOException("texts.json is not valid JSON near byte " + (pos - 1) + ".");
+            keyStart = pos;
+            keyEnd = skipStringBody();
+            if (next() != ':') throw new IOException("texts.json is not valid JSON near byte " + (pos - 1) + ".");
+            return true;
+        }
+
+        /** Positions before the next array element; false at the closing bracket. */
+        boolean nextElement() throws IOException {
+            int b = peek();
+            if (b == ',') { next(); b = peek(); }
+            if (b == ']') { next(); return false; }
+            return true;
+        }
+
+        boolean keyEquals(String key) {
+            if (keyEnd - keyStart != key.length()) return false;
+            for (int i = 0; i < key.length(); i++) if (buf.get(keyStart + i) != key.charAt(i)) return false;
+            return true;
+        }
+
+        String keyString() { return decodeJson(buf, keyStart, keyEnd); }
+
+        /** Consumes a string body after its opening quote; returns the offset of the closing quote. */
+        int skipStringBody() throws IOException {
+            while (pos < buf.limit()) {
+                int b = buf.get(pos++);
+                if (b == '\\') pos++;
+                else if (b == '"') return pos - 1;
+            }
+            throw new IOException("texts.json ends inside a string.");
+        }
+
+        /** Reads an integer value whose first byte was already consumed by next(). */
+        int readInt() {
+            int start = --pos, value = 0;
+            while (pos < buf.limit() && Character.isDigit(buf.get(pos))) value = value * 10 + buf.get(pos++) - '0';
+            return pos == start ? -1 : value;
+        }
+
+        /** Skips a complete value whose first byte was already consumed by next(). */
+        void skipValue() throws IOException {
+            int b = buf.get(pos - 1);
+            if (b == '"') { skipStringBody(); return; }
+            if (b != '{' && b != '[') {
+                while (pos < buf.limit()) {
+                    int c = buf.get(pos);
+                    if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t') break;
+                    pos++;
+                }
+                return;
+            }
+            int depth = 1;
+            while (depth > 0) {
+                int c = next();
+                if (c == '"') skipStringBody();
+                else if (c == '{' || c == '[') depth++;
+                else if (c == '}' || c == ']') depth--;
+            }
+        }
+    }
+}
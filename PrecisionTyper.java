@@ -1,8 +1,16 @@
 import java.awt.*;
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
-import javax.sound.sampled.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.event.DocumentEvent;
@@ -13,110 +21,225 @@ import javax.swing.text.*;
  * PrecisionTyper: 
  * A rigorous typing speed and accuracy trainer.
  * Requires 100% character-match accuracy for completion.
- * - Procedural Mechanical Click Engine (White Noise Version)
- * - Persistent Theme (Dark/Light)
- * - Full Comprehensive Database
+ * - Procedural Mechanical Click Engine (White Noise Version, own audio thread)
+ * - Persistent Theme (Dark/Light) and round history in history.bin
+ * - Passage library loaded from texts.json (plus an optional --corpus directory)
+ * - Every round recorded to sessions/ for SessionReplay
+ * - Adaptive selection of passages heavy in the user's weak bigrams
+ * - Optional alignment scoring, so a skipped or doubled key is one error
+ * - Input coalesced into at most one render per display frame (RenderScheduler)
+ * - Input-to-paint latency as JFR events and a JMX MXBean (TypingMetrics)
+ * - Window first: audio, history, a --corpus index and the bigram indexes
+ *   of adaptive selection load in the background
  */
 public class PrecisionTyper {
 
-    // --- FULL TEXT DATABASE RESTORED ---
-    private static final String[][] TEXT_DATABASE = {
-        { // EASY
-            "The sun rises in the east and sets in the west.",
-            "System.out.println(\"Hello, World!\");",
-            "A rolling stone gathers no moss.",
-            "Clean code is happy code.",
-            "Java is a high-level, class-based, object-oriented language.",
-            "Practice makes perfect.",
-            "Keep it simple, stupid (KISS).",
-            "Debugging is like being the detective in a crime movie.",
-            "While there is life, there is hope.",
-            "Rome was not built in a day.",
-            "public static void main(String[] args)",
-            "Knowledge is power.",
-            "Better late than never.",
-            "A friend in need is a friend indeed.",
-            "Every cloud has a silver lining.",
-            "Time flies like an arrow.",
-            "Errors should never pass silently.",
-            "Love is the bridge between you and everything."
-        },
-        { // MEDIUM
-            "Success is not final, failure is not fatal: it is the courage to continue that counts.",
-            "Programming is the art of telling another human what one wants the computer to do.",
-            "The quick brown fox jumps over the lazy dog. This sentence contains every letter in the alphabet.",
-            "Any fool can write code that a computer can understand. Good programmers write code that humans can understand.",
-            "Happiness can be found, even in the darkest of times, if one only remembers to turn on the light.",
-            "Logic will get you from A to B. Imagination will take you everywhere.",
-            "The only way to do great work is to love what you do. If you haven't found it yet, keep looking.",
-            "Life is what happens when you are busy making other plans.",
-            "Your time is limited, so don't waste it living someone else's life.",
-            "Design is not just what it looks like and feels like. Design is how it works.",
-            "A person who never made a mistake never tried anything new.",
-            "The best way to predict the future is to create it. Learning never exhausts the mind.",
-            "Programs must be written for people to read, and only incidentally for machines to execute.",
-            "It does not matter how slowly you go as long as you do not stop.",
-            "Change is the only constant in life, so do not be afraid of it, embrace it instead.",
-            "Coding is not just about syntax; it is about solving complex problems.",
-            "It is a truth universally acknowledged, that a single man in possession of a good fortune, must be in want of a wife."
-        },
-        { // HARD
-            "To be, or not to be, that is the question: Whether 'tis nobler in the mind to suffer the slings and arrows of outrageous fortune, or to take arms against a sea of troubles.",
-            "A computer is like a violin. You can imagine it making music, but you have to learn how to play it. It takes thousands of hours of practice to become a virtuoso.",
-            "Complexity is the enemy of reliability. Therefore, we must strive for simplicity in our architectures. A well-designed system is one that is easy to reason about.",
-            "In software engineering, loose coupling is a design goal that seeks to reduce the interdependencies between components of a system with the goal of reducing the risk that changes in one component will require changes in any other component.",
-            "It was the best of times, it was the worst of times, it was the age of wisdom, it was the age of foolishness, it was the epoch of belief, it was the epoch of incredulity.",
-            "Two roads diverged in a wood, and I took the one less traveled by, and that has made all the difference.",
-            "Abstraction is the process of removing physical, spatial, or temporal details or attributes in the study of objects or systems to focus attention on details of greater importance.",
-            "Refactoring is a disciplined technique for restructuring an existing body of code, altering its internal structure without changing its external behavior.",
-            "To understand recursion, one must first understand recursion; it is a fundamental concept that requires a shift in logical perspective.",
-            "In the face of ambiguity, refuse the temptation to guess; instead, seek a solution based on empirical evidence and rigorous testing.",
-            "The difference between a successful person and others is not a lack of strength, not a lack of knowledge, but rather a lack of will.",
-            "What's in a name? That which we call a rose by any other name would smell as sweet; so Romeo would, were he not Romeo call'd, retain that dear perfection which he owes without that title.",
-            "Our greatest glory is not in never falling, but in rising every time we fall, regardless of how daunting the challenge may appear.",
-            "Technical debt is a concept in software development that reflects the implied cost of additional rework caused by choosing an easy solution now instead of using a better approach that would take longer.",
-            "Strength does not come from winning; your struggles develop your strengths, and when you go through hardships and decide not to surrender, that is strength.",
-            "Tis but thy name that is my enemy; thou art thyself, though not a Montague. What's Montague? It is nor hand, nor foot, nor arm, nor face, nor any other part belonging to a man. O, be some other name!"
-            
-        }
-    };
-
     // Colors
     private Color bgColor, fgColor, accentColor;
-    private static final Color GREEN_TEXT = new Color(100, 255, 100);
-    private static final Color RED_TEXT = new Color(255, 100, 100);
-    private static final Color GREY_TEXT = new Color(120, 120, 120);
-    private static final Color CURSOR_COLOR = new Color(255, 255, 0, 100);
 
-    private String currentTargetText;
+    private final Startup startup;
+    private PassageStore store;
+    private String currentTargetText, currentPassageId;
+    private int currentDifficulty;
     private JFrame frame;
-    private JTextPane textDisplay;
+    private TextCanvas textDisplay;
+    private int styleFrom = 0;
+    private final TypingEngine engine = new TypingEngine(4096);
+    private final Segment segment = new Segment();
     private JTextArea inputArea; 
     private JLabel timerLabel, wpmLabel, accuracyLabel;
-    private JComboBox<String> difficultyBox;
-    private JCheckBox soundToggle, modeToggle;
+    private JComboBox<String> collectionBox, difficultyBox;
+    private JCheckBox soundToggle, modeToggle, adaptiveToggle, alignToggle;
     private JPanel mainPanel, topPanel, configPanel, statsBar, centerPanel;
     
-    private Timer gameTimer;
+    private static final int STATS_MILLIS = 250;
+    private RenderScheduler scheduler;
     private boolean isGameRunning = false;
-    private int secondsElapsed = 0;
+    private JSpinner bandMin, bandMax;
     private final Random random = new Random();
-    private final ClickSoundEngine soundEngine = new ClickSoundEngine();
-    private final String CONFIG_FILE = "config.txt";
+    private final DifficultyScorer scorer = new DifficultyScorer();
+    private String scoredCollection;
+    private int[] scoredPassages, passageScores, bandRows;
+    private final WeaknessModel weakness = WeaknessModel.load(WeaknessModel.defaultFile());
+    private Map<String, WeaknessModel.BigramIndex> bigramIndexes = Map.of(); // empty until indexPools finishes
+    private final SessionRecorder recorder = SessionRecorder.open("precisiontyper");
+    private final TypingMetrics metrics = new TypingMetrics();
+    private int settingsFlags;
+    private final String LEGACY_CONFIG_FILE = "config.txt";
 
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(PrecisionTyper::new);
+        Path corpus = args.length == 2 && args[0].equals("--corpus") ? Paths.get(args[1]) : null;
+        Startup startup = new Startup(corpus); // before the EDT, so loading overlaps Swing's own startup
+        SwingUtilities.invokeLater(() -> new PrecisionTyper(startup));
+    }
+
+    public PrecisionTyper(Path corpusDir) {
+        this(new Startup(corpusDir));
     }
 
-    public PrecisionTyper() {
+    PrecisionTyper(Startup startup) {
+        this.startup = startup;
         loadSettings(); // Load user theme preference
-        pickNewText(1);
+        engine.setWeakness(weakness);
+        store = await(startup.builtIn);
+        pickNewText(0, 1);
         initializeUI();
+        if (startup.library == startup.builtIn) indexPools(store);
+        startup.library.thenAcceptAsync(this::useLibrary, SwingUtilities::invokeLater);
+    }
+
+    /**
+     * Startup:
+     * Subsystems loaded on background threads, so the window is interactive
+     * before they are ready. The first action that needs one waits for it:
+     * the first passage for the built-in library, the first click for audio,
+     * the next passage for a --corpus index, and the first settings change
+     * or finished round for history.bin.
+     */
+    static final class Startup {
+        final CompletableFuture<PassageStore> builtIn, library;
+        final CompletableFuture<ClickSoundEngine> audio;
+        final CompletableFuture<HistoryStore> history;
+        final Executor background;
+
+        Startup(Path corpusDir) {
+            background = Executors.newThreadPerTaskExecutor(Thread.ofPlatform().name("startup-", 0).daemon().factory());
+            builtIn = CompletableFuture.supplyAsync(() -> loadPassages(null), background);
+            library = corpusDir == null ? builtIn : CompletableFuture.supplyAsync(() -> loadPassages(corpusDir), background);
+            audio = CompletableFuture.supplyAsync(ClickSoundEngine::open, background);
+            history = CompletableFuture.supplyAsync(() -> {
+                try { return HistoryStore.open(HistoryStore.defaultFile()); } catch (IOException e) { return null; }
+            }, background);
+        }
+
+        private static PassageStore loadPassages(Path corpusDir) {
+            try {
+                return PassageStore.load(PassageStore.locateTexts(), corpusDir);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /** Waits for a library load; one that failed ends the program with its message. */
+    private static PassageStore await(CompletableFuture<PassageStore> library) {
+        try {
+            return library.join();
+        } catch (CompletionException e) {
+            JOptionPane.showMessageDialog(null, "The passage library could not be loaded.\n" + e.getCause().getMessage(),
+                    "PrecisionTyper", JOptionPane.ERROR_MESSAGE);
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /** Switches to the library with the --corpus passages once it has loaded. */
+    private void useLibrary(PassageStore library) {
+        if (library == store) return;
+        store = library;
+        bigramIndexes = Map.of(); // corpus files may add to the built-in pools
+        indexPools(store);
+        scoredCollection = null;
+        for (String c : store.collections().subList(collectionBox.getItemCount(), store.collections().size())) {
+            collectionBox.addItem(Character.toUpperCase(c.charAt(0)) + c.substring(1));
+        }
+    }
+
+    /**
+     * Builds the bigram indexes of every pool of library on the startup
+     * executor and installs them on the EDT if library is still in use.
+     * Until then adaptive selection picks uniformly.
+     */
+    private void indexPools(PassageStore library) {
+        CompletableFuture.supplyAsync(() -> poolIndexes(library), startup.background)
+                .thenAcceptAsync(indexes -> { if (store == library) bigramIndexes = indexes; }, SwingUtilities::invokeLater);
+    }
+
+    /** Keyed "collection/difficulty" per tier, and "collection/band" for a whole collection in passages(collection) order. */
+    private static Map<String, WeaknessModel.BigramIndex> poolIndexes(PassageStore library) {
+        Map<String, WeaknessModel.BigramIndex> indexes = new HashMap<>();
+        for (String collection : library.collections()) {
+            for (String difficulty : PassageStore.DIFFICULTIES) {
+                int[] passages = new int[library.poolSize(collection, difficulty)];
+                if (passages.length == 0) continue;
+                for (int i = 0; i < passages.length; i++) passages[i] = library.passage(collection, difficulty, i);
+                indexes.put(collection + "/" + difficulty, WeaknessModel.BigramIndex.build(library, passages));
+            }
+            indexes.put(collection + "/band", WeaknessModel.BigramIndex.build(library, library.passages(collection)));
+        }
+        return indexes;
+    }
+
+    private void pickNewText(int collectionIndex, int difficultyIndex) {
+        String collection = store.collections().get(collectionIndex);
+        if (difficultyIndex == PassageStore.DIFFICULTIES.length) {
+            pickFromScoreBand(collection, (Integer) bandMin.getValue(), (Integer) bandMax.getValue());
+            return;
+        }
+        String difficulty = PassageStore.DIFFICULTIES[difficultyIndex];
+        for (int d = 0; d < PassageStore.DIFFICULTIES.length && store.poolSize(collection, difficulty) == 0; d++) difficulty = PassageStore.DIFFICULTIES[d]; // corpus collections may fill one tier only
+        int size = store.poolSize(collection, difficulty);
+        if (size == 0) { // nothing in any tier: fall back to the first collection
+            if (collectionIndex > 0) pickNewText(0, difficultyIndex);
+            return;
+        }
+        WeaknessModel.BigramIndex pool = adaptive() ? bigramIndexes.get(collection + "/" + difficulty) : null;
+        int index = pool != null ? weakness.pick(pool, null, size, random) : random.nextInt(size);
+        startRound(store.passage(collection, difficulty, index));
+    }
+
+    /** Adaptive selection starts once the weakness model has seen enough keystrokes. */
+    private boolean adaptive() {
+        return (settingsFlags & HistoryStore.ADAPTIVE_OFF) == 0 && weakness.keystrokes() >= WeaknessModel.MIN_KEYSTROKES;
+    }
+
+    /**
+     * Picks a random passage of the collection whose 0-100 difficulty score
+     * lies in [min, max], or the closest-scoring passage when none does.
+     */
+    private void pickFromScoreBand(String collection, int min, int max) {
+        if (!collection.equals(scoredCollection)) {
+            scoredPassages = store.passages(collection);
+            passageScores = scorer.scoreAll(store, scoredPassages);
+            scoredCollection = collection;
+        }
+        int matches = 0, closest = 0, closestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < passageScores.length; i++) {
+            int distance = Math.max(min - passageScores[i], passageScores[i] - max);
+            if (distance <= 0) matches++;
+            else if (distance < closestDistance) { closestDistance = distance; closest = i; }
+        }
+        int pick = closest;
+        WeaknessModel.BigramIndex band = matches > 0 && adaptive() ? bigramIndexes.get(collection + "/band") : null;
+        if (band != null) {
+            if (bandRows == null || bandRows.length < passageScores.length) bandRows = new int[passageScores.length];
+            for (int i = 0, n = 0; i < passageScores.length; i++) {
+                if (Math.max(min - passageScores[i], passageScores[i] - max) <= 0) bandRows[n++] = i;
+            }
+            pick = weakness.pick(band, bandRows, matches, random);
+        } else if (matches > 0) {
+            int k = random.nextInt(matches);
+            for (pick = 0; Math.max(min - passageScores[pick], passageScores[pick] - max) > 0 || k-- > 0; pick++);
+        }
+        startRound(scoredPassages[pick]);
     }
 
-    private void pickNewText(int difficultyIndex) {
-        String[] options = TEXT_DATABASE[difficultyIndex];
-        currentTargetText = options[random.nextInt(options.length)];
+    /** Finishes the session log and saves the weakness model and metrics, as closing the window does; EDT only. */
+    void close() {
+        recorder.close();
+        saveWeakness();
+        metrics.close();
+    }
+
+    /** The passage of the round in progress; EDT only. For LoadGenerator --window. */
+    String targetText() { return currentTargetText; }
+
+    private void startRound(int passage) {
+        currentTargetText = store.typingText(passage);
+        currentPassageId = store.id(passage);
+        currentDifficulty = Arrays.asList(PassageStore.DIFFICULTIES).indexOf(store.difficultyOf(passage));
+        engine.reset(currentTargetText, (settingsFlags & HistoryStore.ALIGN) != 0);
+        recorder.startRound(currentPassageId, currentTargetText, engine.isAligning(), System.nanoTime());
     }
 
     private void initializeUI() {
@@ -124,6 +247,10 @@ public class PrecisionTyper {
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setSize(1100, 850); 
         frame.setLocationRelativeTo(null);
+        frame.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) { close(); }
+        });
 
         mainPanel = new JPanel(new BorderLayout(20, 20));
         mainPanel.setBorder(new EmptyBorder(20, 30, 20, 30));
@@ -131,21 +258,60 @@ public class PrecisionTyper {
         topPanel = new JPanel(new BorderLayout());
         configPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         
-        difficultyBox = new JComboBox<>(new String[]{"Easy", "Medium", "Hard"});
+        collectionBox = new JComboBox<>();
+        for (String c : store.collections()) collectionBox.addItem(Character.toUpperCase(c.charAt(0)) + c.substring(1));
+        collectionBox.addActionListener(e -> resetGame());
+        collectionBox.setFocusable(false);
+
+        bandMin = new JSpinner(new SpinnerNumberModel(40, 0, 100, 1));
+        bandMax = new JSpinner(new SpinnerNumberModel(60, 0, 100, 1));
+        for (JSpinner spinner : new JSpinner[]{bandMin, bandMax}) {
+            spinner.setVisible(false);
+            spinner.addChangeListener(e -> resetGame());
+        }
+
+        difficultyBox = new JComboBox<>(new String[]{"Easy", "Medium", "Hard", "Score band"});
         difficultyBox.setSelectedIndex(1);
-        difficultyBox.addActionListener(e -> resetGame());
+        difficultyBox.addActionListener(e -> {
+            boolean band = difficultyBox.getSelectedIndex() == PassageStore.DIFFICULTIES.length;
+            bandMin.setVisible(band); bandMax.setVisible(band);
+            resetGame();
+        });
         difficultyBox.setFocusable(false);
         
-        soundToggle = new JCheckBox("Sound", true);
+        soundToggle = new JCheckBox("Sound", (settingsFlags & HistoryStore.SOUND_OFF) == 0);
         soundToggle.setFocusable(false);
+        soundToggle.addActionListener(e -> saveSettings());
 
         modeToggle = new JCheckBox("Light Mode", (bgColor.getRed() > 100));
         modeToggle.setFocusable(false);
         modeToggle.addActionListener(e -> { toggleTheme(); saveSettings(); });
 
+        adaptiveToggle = new JCheckBox("Adaptive", (settingsFlags & HistoryStore.ADAPTIVE_OFF) == 0);
+        adaptiveToggle.setToolTipText("Favor passages with the letter pairs you miss or hesitate on (after " + WeaknessModel.MIN_KEYSTROKES + " keystrokes)");
+        adaptiveToggle.setFocusable(false);
+        adaptiveToggle.addActionListener(e -> saveSettings());
+
+        alignToggle = new JCheckBox("Align", (settingsFlags & HistoryStore.ALIGN) != 0);
+        alignToggle.setToolTipText("Judge keystrokes by alignment, so a skipped or doubled key counts as one error (passages up to " + AlignmentScorer.MAX_TARGET
+                + " characters). Scores only: the passage is still highlighted position by position.");
+        alignToggle.setFocusable(false);
+        alignToggle.addActionListener(e -> {
+            saveSettings();
+            engine.setAligning(alignToggle.isSelected());
+            recorder.align(System.nanoTime(), engine.isAligning());
+            updateLiveStats();
+        });
+
+        configPanel.add(new JLabel("Collection: "));
+        configPanel.add(collectionBox);
         configPanel.add(new JLabel("Difficulty: "));
         configPanel.add(difficultyBox);
+        configPanel.add(bandMin);
+        configPanel.add(bandMax);
         configPanel.add(soundToggle);
+        configPanel.add(adaptiveToggle);
+        configPanel.add(alignToggle);
         configPanel.add(modeToggle);
         
         statsBar = new JPanel(new GridLayout(1, 3, 20, 0));
@@ -163,10 +329,16 @@ public class PrecisionTyper {
         topPanel.add(statsBar, BorderLayout.CENTER);
 
         centerPanel = new JPanel(new GridLayout(2, 1, 0, 20));
-        textDisplay = new JTextPane();
-        textDisplay.setEditable(false);
-        textDisplay.setFont(new Font("Monospaced", Font.BOLD, 26));
-        textDisplay.setMargin(new Insets(20, 20, 20, 20));
+        textDisplay = new TextCanvas() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                long start = System.nanoTime();
+                super.paintComponent(g);
+                metrics.painted(start);
+            }
+        };
+        textDisplay.setBorder(new EmptyBorder(20, 20, 20, 20));
+        textDisplay.setTarget(currentTargetText);
         
         inputArea = new JTextArea();
         inputArea.setFont(new Font("Monospaced", Font.PLAIN, 26));
@@ -174,6 +346,7 @@ public class PrecisionTyper {
         inputArea.setWrapStyleWord(true);
         inputArea.setMargin(new Insets(20, 20, 20, 20));
         inputArea.setFocusTraversalKeys(KeyboardFocusManager.FORWARD_TRAVERSAL_KEYS, java.util.Collections.emptySet());
+        ((AbstractDocument) inputArea.getDocument()).setDocumentFilter(new LineBreakFilter());
 
         centerPanel.add(new JScrollPane(textDisplay));
         centerPanel.add(new JScrollPane(inputArea));
@@ -182,21 +355,39 @@ public class PrecisionTyper {
         mainPanel.add(centerPanel, BorderLayout.CENTER);
         frame.add(mainPanel);
 
+        scheduler = new RenderScheduler(this::checkProgress, this::updateLiveStats, STATS_MILLIS);
         inputArea.getDocument().addDocumentListener(new DocumentListener() {
-            public void insertUpdate(DocumentEvent e) { handle(true); }
-            public void removeUpdate(DocumentEvent e) { handle(true); }
+            public void insertUpdate(DocumentEvent e) {
+                long now = System.nanoTime();
+                metrics.received(now);
+                try {
+                    e.getDocument().getText(e.getOffset(), e.getLength(), segment);
+                    engine.onInsert(e.getOffset(), segment, now);
+                    recorder.insert(now, e.getOffset(), segment);
+                } catch (BadLocationException ex) {}
+                metrics.scored(now, e.getOffset(), e.getLength(), false);
+                styleFrom = Math.min(styleFrom, e.getOffset()); handle(true);
+            }
+            public void removeUpdate(DocumentEvent e) {
+                long now = System.nanoTime();
+                metrics.received(now);
+                engine.onRemove(e.getOffset(), e.getLength(), now);
+                recorder.remove(now, e.getOffset(), e.getLength());
+                metrics.scored(now, e.getOffset(), e.getLength(), true);
+                styleFrom = Math.min(styleFrom, e.getOffset()); handle(true);
+            }
             public void changedUpdate(DocumentEvent e) { handle(false); }
             private void handle(boolean playSound) {
-                SwingUtilities.invokeLater(() -> {
-                    checkProgress();
-                    if (playSound && soundToggle.isSelected()) soundEngine.playClick();
-                });
+                if (playSound && soundToggle.isSelected()) startup.audio.join().playClick();
+                scheduler.markDirty();
             }
         });
 
         refreshUI();
         frame.setVisible(true);
         inputArea.requestFocusInWindow();
+        metrics.start(scheduler);
+        startup.audio.thenAccept(metrics::watch);
     }
 
     private void toggleTheme() {
@@ -211,7 +402,7 @@ public class PrecisionTyper {
     private void refreshUI() {
         frame.getContentPane().setBackground(bgColor);
         for (JPanel p : new JPanel[]{mainPanel, topPanel, configPanel, statsBar, centerPanel}) p.setBackground(bgColor);
-        for (JCheckBox cb : new JCheckBox[]{soundToggle, modeToggle}) { cb.setBackground(bgColor); cb.setForeground(fgColor); }
+        for (JCheckBox cb : new JCheckBox[]{soundToggle, modeToggle, adaptiveToggle, alignToggle}) { cb.setBackground(bgColor); cb.setForeground(fgColor); }
         textDisplay.setBackground(accentColor);
         inputArea.setBackground(accentColor); 
         inputArea.setForeground(fgColor);
@@ -220,21 +411,38 @@ public class PrecisionTyper {
             l.setBackground(accentColor);
             l.setForeground(modeToggle.isSelected() ? new Color(0, 102, 204) : new Color(87, 199, 255));
         }
-        updateTextStyles(inputArea.getText());
+        updateTextStyles();
     }
 
     private void saveSettings() {
-        try (PrintWriter out = new PrintWriter(new File(CONFIG_FILE))) {
-            out.println(modeToggle.isSelected() ? "LIGHT" : "DARK");
-        } catch (Exception e) {}
+        settingsFlags = (modeToggle.isSelected() ? HistoryStore.LIGHT_MODE : 0) | (soundToggle.isSelected() ? 0 : HistoryStore.SOUND_OFF)
+                | (adaptiveToggle.isSelected() ? 0 : HistoryStore.ADAPTIVE_OFF) | (alignToggle.isSelected() ? HistoryStore.ALIGN : 0);
+        HistoryStore history = startup.history.join();
+        if (history == null) return;
+        try { history.saveSettings(settingsFlags); } catch (IOException e) {}
     }
 
+    /**
+     * Reads the settings section of history.bin without waiting for the
+     * store to open. A config.txt left by older versions is migrated into it
+     * once the store is open, and then removed.
+     */
     private void loadSettings() {
-        File f = new File(CONFIG_FILE);
-        boolean isLight = false;
-        if (f.exists()) {
-            try (Scanner sc = new Scanner(f)) { if (sc.hasNext()) isLight = sc.next().equals("LIGHT"); } catch (Exception e) {}
+        settingsFlags = HistoryStore.peekSettings(HistoryStore.defaultFile(), -1);
+        File legacy = new File(LEGACY_CONFIG_FILE);
+        if (settingsFlags < 0) {
+            settingsFlags = 0;
+            if (legacy.exists()) {
+                try (Scanner sc = new Scanner(legacy)) { if (sc.hasNext() && sc.next().equals("LIGHT")) settingsFlags = HistoryStore.LIGHT_MODE; } catch (Exception e) {}
+                int migrated = settingsFlags;
+                startup.history.thenAcceptAsync(history -> {
+                    try {
+                        if (history != null && !history.hasSettings()) { history.saveSettings(migrated); legacy.delete(); }
+                    } catch (IOException e) {}
+                }, SwingUtilities::invokeLater);
+            }
         }
+        boolean isLight = (settingsFlags & HistoryStore.LIGHT_MODE) != 0;
         if (isLight) {
             bgColor = new Color(245, 245, 245); fgColor = Color.BLACK; accentColor = Color.WHITE;
         } else {
@@ -253,99 +461,127 @@ public class PrecisionTyper {
     private void startTimer() {
         if (isGameRunning) return;
         isGameRunning = true;
-        gameTimer = new Timer(1000, e -> {
-            secondsElapsed++;
-            timerLabel.setText("Time: " + secondsElapsed + "s");
-            updateLiveStats();
-        });
-        gameTimer.start();
+        scheduler.start();
     }
 
+    /** One frame: target styles and the completion check. Statistics follow on their own cadence. */
     private void checkProgress() {
-        String typed = inputArea.getText().replace("\n", "").replace("\r", "");
-        if (!isGameRunning && !typed.isEmpty()) startTimer();
-        updateTextStyles(typed);
-        updateLiveStats();
-        if (typed.equals(currentTargetText)) gameOver();
+        if (!isGameRunning && engine.typedLength() > 0) startTimer();
+        metrics.styled(updateTextStyles());
+        if (engine.isComplete()) gameOver();
     }
 
     private void updateLiveStats() {
-        String typed = inputArea.getText().replace("\n", "").replace("\r", "");
-        if (typed.isEmpty()) return;
-        double mins = Math.max(secondsElapsed / 60.0, 0.01);
-        wpmLabel.setText("WPM: " + (int)((typed.length() / 5.0) / mins));
-        int correct = 0;
-        int len = Math.min(typed.length(), currentTargetText.length());
-        for (int i = 0; i < len; i++) if (typed.charAt(i) == currentTargetText.charAt(i)) correct++;
-        accuracyLabel.setText("Accuracy: " + (int)((double)correct / Math.max(typed.length(), 1) * 100) + "%");
+        showStats(engine, System.nanoTime(), timerLabel, wpmLabel, accuracyLabel, scheduler);
     }
 
-    private void updateTextStyles(String typed) {
-        StyledDocument doc = textDisplay.getStyledDocument();
-        SimpleAttributeSet c = new SimpleAttributeSet(), w = new SimpleAttributeSet(), r = new SimpleAttributeSet(), h = new SimpleAttributeSet();
-        StyleConstants.setForeground(c, GREEN_TEXT);
-        StyleConstants.setForeground(w, RED_TEXT); StyleConstants.setUnderline(w, true);
-        StyleConstants.setForeground(r, GREY_TEXT);
-        StyleConstants.setBackground(h, CURSOR_COLOR);
-        try {
-            doc.remove(0, doc.getLength());
-            for (int i = 0; i < currentTargetText.length(); i++) {
-                if (i < typed.length()) {
-                    boolean match = typed.charAt(i) == currentTargetText.charAt(i);
-                    doc.insertString(doc.getLength(), String.valueOf(currentTargetText.charAt(i)), match ? c : w);
-                } else {
-                    doc.insertString(doc.getLength(), String.valueOf(currentTargetText.charAt(i)), i == typed.length() ? h : r);
-                }
-            }
-        } catch (Exception e) {}
+    /** Returns whether the target view changed. */
+    private boolean updateTextStyles() {
+        boolean changed = styleTarget(textDisplay, engine, styleFrom);
+        styleFrom = Integer.MAX_VALUE;
+        return changed;
+    }
+
+    /**
+     * The styling half of a frame: restyles the target view from the first
+     * changed offset. Returns whether the view changed. Shared with
+     * SessionReplay and the benchmarks, which run it without a window.
+     */
+    static boolean styleTarget(TextCanvas view, TypingEngine engine, int changedFrom) {
+        return view.update(engine.progress(), changedFrom);
+    }
+
+    /**
+     * The statistics refresh: writes the round's time, WPM and accuracy at
+     * now into the labels, with the rolling and alignment figures as
+     * tooltips and the scheduler's summary (if any) on the timer. Does
+     * nothing before the first keystroke.
+     */
+    static void showStats(TypingEngine engine, long now, JLabel timer, JLabel wpm, JLabel accuracy, RenderScheduler scheduler) {
+        KeystrokeTimeline timeline = engine.timeline();
+        if (timeline.isEmpty()) return;
+        timer.setText("Time: " + (now - timeline.startNanos()) / 1_000_000_000L + "s");
+        timer.setToolTipText(scheduler != null ? scheduler.summary() : null);
+        wpm.setText("WPM: " + (int) timeline.wpm(now));
+        wpm.setToolTipText(String.format("Last 5 s: %.0f WPM | Last 10 words: %.0f WPM",
+                timeline.rollingWpm(now, 5_000_000_000L), timeline.lastWordsWpm(10)));
+        accuracy.setText("Accuracy: " + (int) timeline.accuracy() + "%");
+        AlignmentScorer aligner = engine.alignment();
+        accuracy.setToolTipText(engine.isAligning() ? String.format("Now: %.0f%% aligned | %d wrong, %d extra, %d skipped",
+                aligner.accuracy(), aligner.substitutions(), aligner.insertions(), aligner.deletions()) : null);
     }
 
     private void gameOver() {
-        if (gameTimer != null) gameTimer.stop();
+        scheduler.stop();
         isGameRunning = false;
-        JOptionPane.showMessageDialog(frame, "Done!\n" + wpmLabel.getText() + "\n" + accuracyLabel.getText());
+        updateLiveStats();
+        KeystrokeTimeline timeline = engine.timeline();
+        long end = timeline.lastNanos();
+        recorder.endRound(end);
+        saveWeakness();
+        JTextArea summary = new JTextArea(String.format("Done!%nTime: %.2f s%nWPM: %.1f (last 10 words: %.1f)%nAccuracy: %.1f%%%n%n",
+                (end - timeline.startNanos()) / 1e9, timeline.wpm(end), timeline.lastWordsWpm(10), timeline.accuracy())
+                + recordRound(end) + timeline.histogramSummary() + "\nRendering: " + scheduler.summary());
+        summary.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        summary.setEditable(false);
+        summary.setOpaque(false);
+        JOptionPane.showMessageDialog(frame, summary);
         resetGame();
     }
 
+    private void saveWeakness() {
+        try { weakness.save(WeaknessModel.defaultFile()); } catch (IOException e) {}
+    }
+
+    /** Appends the finished round to the history and summarizes it against earlier rounds. */
+    private String recordRound(long end) {
+        HistoryStore history = startup.history.join();
+        if (history == null) return "";
+        KeystrokeTimeline timeline = engine.timeline();
+        try {
+            history.append(System.currentTimeMillis(), currentPassageId, HistoryStore.DESKTOP, currentDifficulty,
+                    end - timeline.startNanos(), timeline.wpm(end), timeline.accuracy(), timeline.errors(), engine.targetLength());
+            HistoryStore.Trend trend = history.trend(currentDifficulty, 10);
+            int best = history.personalBest(currentDifficulty);
+            return String.format("%s best: %.1f WPM | last %d average: %.1f WPM (%+.1f)%n%n",
+                    difficultyBox.getItemAt(currentDifficulty), history.wpmAt(best), trend.recent.rounds, trend.recent.wpm, trend.wpmChange());
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
     private void resetGame() {
-        if (gameTimer != null) gameTimer.stop();
-        secondsElapsed = 0; isGameRunning = false;
+        scheduler.stop();
+        scheduler.reset();
+        isGameRunning = false;
         timerLabel.setText("Time: 0s"); wpmLabel.setText("WPM: 0"); accuracyLabel.setText("Accuracy: 100%");
-        inputArea.setText(""); pickNewText(difficultyBox.getSelectedIndex());
-        updateTextStyles(""); inputArea.requestFocusInWindow();
+        recorder.endRound(System.nanoTime());
+        useLibrary(await(startup.library));
+        inputArea.setText(""); pickNewText(collectionBox.getSelectedIndex(), difficultyBox.getSelectedIndex());
+        textDisplay.setTarget(currentTargetText); styleFrom = Integer.MAX_VALUE;
+        inputArea.requestFocusInWindow();
     }
 
     /**
-     * Mechanical Sound Engine: Procedural White Noise Version
+     * Drops carriage returns, and Enter key line breaks unless the target
+     * itself spans lines (Code passages), so the typed text lines up
+     * offset-for-offset with the target.
      */
-    private static class ClickSoundEngine {
-        private byte[] clickSoundData;
-        private AudioFormat format;
+    private class LineBreakFilter extends DocumentFilter {
+        @Override
+        public void insertString(FilterBypass fb, int offset, String text, AttributeSet attr) throws BadLocationException {
+            super.insertString(fb, offset, strip(text), attr);
+        }
 
-        public ClickSoundEngine() {
-            try {
-                format = new AudioFormat(44100, 8, 1, true, false);
-                int durationMs = 25;
-                int bufferSize = (int)(44100 * (durationMs / 1000.0));
-                clickSoundData = new byte[bufferSize];
-
-                Random r = new Random();
-                for (int i = 0; i < clickSoundData.length; i++) {
-                    double noise = (r.nextDouble() * 2.0) - 1.0; 
-                    double decay = 1.0 - ((double)i / clickSoundData.length);
-                    double amplitude = noise * (decay * decay); 
-                    clickSoundData[i] = (byte)(amplitude * 127);
-                }
-            } catch (Exception e) { e.printStackTrace(); }
+        @Override
+        public void replace(FilterBypass fb, int offset, int length, String text, AttributeSet attrs) throws BadLocationException {
+            super.replace(fb, offset, length, strip(text), attrs);
         }
 
-        public void playClick() {
-            try {
-                SourceDataLine line = AudioSystem.getSourceDataLine(format);
-                line.open(format); line.start();
-                line.write(clickSoundData, 0, clickSoundData.length);
-                line.drain(); line.close();
-            } catch (Exception e) {}
+        private String strip(String text) {
+            if (text == null || (text.indexOf('\n') < 0 && text.indexOf('\r') < 0)) return text;
+            text = text.replace("\r", "");
+            return currentTargetText.indexOf('\n') >= 0 ? text : text.replace("\n", "");
         }
     }
 }
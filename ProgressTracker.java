@@ -0,0 +1,125 @@
+/**
+ * ProgressTracker:
+ * Incremental position-by-position scoring of typed text against a target.
+ * Fed with the offsets of each insert and remove, it keeps a running count
+ * of correct characters, a mismatch bitset, and the first-error index.
+ * - Appends and end-of-text deletions cost O(edit size)
+ * - Mid-text edits only rescore the shifted tail
+ * - No String copies; buffers only grow when typed text outgrows them
+ */
+public class ProgressTracker {
+
+    private String target = "";
+    private char[] typed = new char[64];
+    private long[] mismatches = new long[1];
+    private int typedLength;
+    private int correct;
+    private int firstError = -1;
+
+    /** Starts a new passage with nothing typed. */
+    public void reset(String target) {
+        this.target = target;
+        ensureCapacity(target.length());
+        java.util.Arrays.fill(mismatches, 0L);
+        typedLength = 0;
+        correct = 0;
+        firstError = -1;
+    }
+
+    /** Records text inserted at the given offset of the typed text. */
+    public void insert(int offset, CharSequence text) {
+        int count = text.length();
+        if (count == 0) return;
+        ensureCapacity(typedLength + count);
+        System.arraycopy(typed, offset, typed, offset + count, typedLength - offset);
+        for (int i = 0; i < count; i++) typed[offset + i] = text.charAt(i);
+        int oldLength = typedLength;
+        typedLength += count;
+        rescore(offset, oldLength);
+    }
+
+    /** Records the removal of length characters starting at offset. */
+    public void remove(int offset, int length) {
+        if (length == 0) return;
+        int oldLength = typedLength;
+        System.arraycopy(typed, offset + length, typed, offset, typedLength - offset - length);
+        typedLength -= length;
+        rescore(offset, oldLength);
+    }
+
+    /** Replaces the whole typed text, e.g. a full line read from the console. */
+    public void setTyped(CharSequence text) {
+        remove(0, typedLength);
+        insert(0, text);
+    }
+
+    public int typedLength() { return typedLength; }
+
+    /** A copy of the typed text. */
+    public String typedText() { return new String(typed, 0, typedLength); }
+
+    public int correctCount() { return correct; }
+
+    public int targetLength() { return target.length(); }
+
+    /** Index of the first wrong character, or -1 when the typed text is a clean prefix. */
+    public int firstErrorIndex() { return firstError; }
+
+    /** Whether the typed character at index matches the target. */
+    public boolean isCorrect(int index) {
+        return (mismatches[index >>> 6] & (1L << index)) == 0;
+    }
+
+    public boolean isComplete() {
+        return typedLength == target.length() && correct == typedLength;
+    }
+
+    /**
+     * Whether a typed character satisfies a target character. Like the Web
+     * Edition, typographic quotes and dashes accept their English-keyboard
+     * equivalents.
+     */
+    static boolean matches(char typed, char target) {
+        if (typed == target) return true;
+        switch (target) {
+            case '\u201C': case '\u201D': return typed == '"';
+            case '\u2018': case '\u2019': return typed == '\'';
+            case '\u2014': case '\u2013': return typed == '-';
+            default: return false;
+        }
+    }
+
+    /**
+     * Rescores positions from offset to the end of the longer of the old and
+     * new typed text; earlier positions are unaffected by the edit.
+     */
+    private void rescore(int offset, int oldLength) {
+        int targetLength = target.length();
+        int end = Math.max(oldLength, typedLength);
+        for (int i = offset; i < end; i++) {
+            boolean wasCorrect = i < oldLength && isCorrect(i);
+            boolean nowCorrect = i < typedLength && i < targetLength && matches(typed[i], target.charAt(i));
+            if (wasCorrect != nowCorrect) correct += nowCorrect ? 1 : -1;
+            if (i < typedLength && !nowCorrect) mismatches[i >>> 6] |= 1L << i;
+            else mismatches[i >>> 6] &= ~(1L << i);
+        }
+        if (firstError < 0 || firstError >= offset) firstError = nextMismatch(offset);
+    }
+
+    private int nextMismatch(int from) {
+        for (int w = from >>> 6; w < mismatches.length; w++) {
+            long word = mismatches[w] & (w == from >>> 6 ? -1L << from : -1L);
+            if (word != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(word);
+                return index < typedLength ? index : -1;
+            }
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > typed.length) typed = java.util.Arrays.copyOf(typed, Math.max(size, typed.length * 2));
+        int words = (typed.length + 63) >>> 6;
+        if (words > mismatches.length) mismatches = java.util.Arrays.copyOf(mismatches, words);
+    }
+}
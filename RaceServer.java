@@ -0,0 +1,371 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * RaceServer:
+ * Hosts typing races over TCP for TypeRacerGame --server.
+ * - One virtual thread reads each connection and scores its keystrokes
+ *   with a TypingEngine; a second one writes its outgoing messages
+ * - Racers are grouped into races of up to raceSize as they join
+ * - A single ticker broadcasts each changed race once per tick: the frame
+ *   is built once and handed to every racer's outbox, which keeps only
+ *   the latest frame, so a slow reader skips stale frames instead of
+ *   queueing them
+ *
+ * Line protocol (UTF-8, one message per line):
+ *   client: JOIN name | I offset text | D offset length | L text | QUIT
+ *   server: WELCOME id | RACE raceId passageId id:name... | TEXT text | GO
+ *           T tick id:correct... | FINISH id place wpm | LEFT id
+ *           END id:place:wpm... | ERR message
+ * I and D are edits of the typed text at an offset; L replaces all of it
+ * (a console line). Unfinished racers are listed in END with place 0.
+ * A malformed or out-of-range edit is answered with ERR and ignored.
+ */
+public class RaceServer {
+
+    public static final int DEFAULT_PORT = 7777;
+    private static final long LOBBY_NANOS = 5_000_000_000L;
+    private static final long RACE_LIMIT_NANOS = 180_000_000_000L;
+
+    private final String[] passageIds, texts;
+    private final int raceSize;
+    private final long tickMillis;
+    private final Random random = new Random();
+    private final ReentrantLock lobbyLock = new ReentrantLock();
+    private final List<Race> races = new ArrayList<>();
+    private final AtomicInteger nextRacerId = new AtomicInteger(1), nextRaceId = new AtomicInteger(1);
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicLong keystrokes = new AtomicLong(), frames = new AtomicLong();
+    private Race lobby;
+    private volatile ServerSocket serverSocket;
+
+    public RaceServer(String[] passageIds, String[] texts, int raceSize, long tickMillis) {
+        if (texts.length == 0) throw new IllegalArgumentException("no passages to race on");
+        this.passageIds = passageIds;
+        this.texts = texts;
+        this.raceSize = raceSize;
+        this.tickMillis = tickMillis;
+    }
+
+    /** Accepts connections until the socket is closed; blocks the calling thread. */
+    public void serve(int port) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port), 1024);
+        Thread.ofPlatform().daemon().name("race-ticker").start(this::tickLoop);
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) break;
+                continue;
+            }
+            socket.setTcpNoDelay(true);
+            Racer racer = new Racer(nextRacerId.getAndIncrement(), socket);
+            connected.incrementAndGet();
+            Thread.ofVirtual().name("racer-" + racer.id).start(racer::readLoop);
+            Thread.ofVirtual().name("racer-" + racer.id + "-out").start(racer::writeLoop);
+        }
+    }
+
+    public int port() { return serverSocket == null ? -1 : serverSocket.getLocalPort(); }
+
+    public void close() {
+        try { if (serverSocket != null) serverSocket.close(); } catch (IOException e) {}
+    }
+
+    /** Keystroke and frame counters for status lines and load tests. */
+    public long keystrokes() { return keystrokes.get(); }
+    public long frames() { return frames.get(); }
+    public int connections() { return connected.get(); }
+
+    // ---- Races ----
+
+    private void join(Racer racer, String name) {
+        lobbyLock.lock();
+        try {
+            if (lobby == null) lobby = new Race(nextRaceId.getAndIncrement(), System.nanoTime());
+            racer.name = name;
+            racer.race = lobby;
+            lobby.racers.add(racer);
+            if (lobby.racers.size() >= raceSize) startLobby();
+        } finally {
+            lobbyLock.unlock();
+        }
+    }
+
+    /** Starts the lobby race; callers hold lobbyLock. */
+    private void startLobby() {
+        Race race = lobby;
+        lobby = null;
+        int pick = random.nextInt(texts.length);
+        race.text = texts[pick];
+        StringBuilder header = new StringBuilder("RACE ").append(race.id).append(' ').append(passageIds[pick]);
+        for (Racer r : race.racers) header.append(' ').append(r.id).append(':').append(r.name);
+        byte[] raceLine = line(header), textLine = line(new StringBuilder("TEXT ").append(race.text)), go = line(new StringBuilder("GO"));
+        race.startNanos = System.nanoTime();
+        for (Racer r : race.racers) {
+            r.start(race.text);
+            r.send(raceLine);
+            r.send(textLine);
+            r.send(go);
+        }
+        synchronized (races) { races.add(race); }
+    }
+
+    private void tickLoop() {
+        long tick = 0, next = System.nanoTime(), nextStatus = next + 10_000_000_000L;
+        long lastKeys = 0, lastFrames = 0;
+        while (!serverSocket.isClosed()) {
+            next += tickMillis * 1_000_000L;
+            long now = System.nanoTime();
+            if (next > now) java.util.concurrent.locks.LockSupport.parkNanos(next - now);
+            else next = now;
+            tick++;
+            lobbyLock.lock();
+            try {
+                if (lobby != null) {
+                    lobby.racers.removeIf(r -> r.closed);
+                    if (lobby.racers.isEmpty()) lobby = null;
+                    else if (System.nanoTime() - lobby.createdNanos > LOBBY_NANOS) startLobby();
+                }
+            } finally {
+                lobbyLock.unlock();
+            }
+            Race[] active;
+            synchronized (races) { active = races.toArray(new Race[0]); }
+            for (Race race : active) {
+                if (race.dirty.getAndSet(false)) broadcast(race, tick);
+                if (race.isOver(System.nanoTime())) end(race);
+            }
+            if (System.nanoTime() > nextStatus) {
+                long keys = keystrokes.get(), sent = frames.get();
+                if (connected.get() > 0) System.out.printf("racers %d, races %d, %d keystrokes/s, %d frames/s%n",
+                        connected.get(), active.length, (keys - lastKeys) / 10, (sent - lastFrames) / 10);
+                lastKeys = keys;
+                lastFrames = sent;
+                nextStatus = System.nanoTime() + 10_000_000_000L;
+            }
+        }
+    }
+
+    /** One frame per race per tick, shared by every racer in it. */
+    private void broadcast(Race race, long tick) {
+        StringBuilder frame = new StringBuilder(16 + race.racers.size() * 10).append("T ").append(tick);
+        for (Racer r : race.racers) frame.append(' ').append(r.id).append(':').append(r.correct);
+        byte[] bytes = line(frame);
+        for (Racer r : race.racers) if (!r.closed) r.offerFrame(bytes);
+        frames.addAndGet(race.racers.size());
+    }
+
+    private void end(Race race) {
+        synchronized (races) { if (!races.remove(race)) return; }
+        StringBuilder result = new StringBuilder("END");
+        for (Racer r : race.racers) result.append(' ').append(r.id).append(':').append(r.place).append(':').append(Math.round(r.wpm));
+        byte[] bytes = line(result);
+        for (Racer r : race.racers) {
+            r.send(bytes);
+            r.race = null;
+        }
+    }
+
+    private static byte[] line(CharSequence text) {
+        return (text + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private final class Race {
+        final int id;
+        final long createdNanos;
+        final List<Racer> racers = new ArrayList<>();
+        final AtomicBoolean dirty = new AtomicBoolean();
+        final AtomicInteger finished = new AtomicInteger();
+        volatile String text;
+        volatile long startNanos;
+
+        Race(int id, long createdNanos) {
+            this.id = id;
+            this.createdNanos = createdNanos;
+        }
+
+        boolean isOver(long now) {
+            if (now - startNanos > RACE_LIMIT_NANOS) return true;
+            for (Racer r : racers) if (r.place == 0 && !r.closed) return false;
+            return true;
+        }
+
+        void announce(byte[] message) {
+            for (Racer r : racers) if (!r.closed) r.send(message);
+        }
+    }
+
+    // ---- Connections ----
+
+    private final class Racer {
+        final int id;
+        final Socket socket;
+        final TypingEngine engine = new TypingEngine(64);
+        volatile String name;
+        volatile Race race;
+        volatile boolean started, closed;
+        volatile int correct, place;
+        volatile double wpm;
+
+        private final ReentrantLock outLock = new ReentrantLock();
+        private final Condition ready = outLock.newCondition();
+        private final ArrayDeque<byte[]> control = new ArrayDeque<>();
+        private byte[] frame;
+
+        Racer(int id, Socket socket) {
+            this.id = id;
+            this.socket = socket;
+        }
+
+        /** Called by the race starter before GO is sent; started publishes the reset engine. */
+        void start(String text) {
+            engine.reset(text, false);
+            correct = 0;
+            place = 0;
+            started = true;
+        }
+
+        void readLoop() {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1024)) {
+                send(line(new StringBuilder("WELCOME ").append(id)));
+                String message;
+                while ((message = in.readLine()) != null) {
+                    if (message.equals("QUIT")) break;
+                    handle(message);
+                }
+            } catch (IOException | RuntimeException e) {
+                // A dropped or misbehaving connection only removes this racer.
+            } finally {
+                close();
+            }
+        }
+
+        private void handle(String message) {
+            if (message.startsWith("JOIN ")) {
+                if (race != null) { send(line(new StringBuilder("ERR already racing"))); return; }
+                started = false;
+                String requested = message.substring(5).trim();
+                join(this, requested.isEmpty() ? "racer" + id : requested.replaceAll("[\\s:]", "_"));
+                return;
+            }
+            Race current = race;
+            if (current == null || !started || place != 0) return;
+            if (!edit(message)) { send(line(new StringBuilder("ERR bad edit: ").append(message))); return; }
+            correct = engine.correctCount();
+            current.dirty.set(true);
+            if (engine.isComplete()) {
+                wpm = (engine.targetLength() / 5.0) / ((System.nanoTime() - current.startNanos) / 60e9);
+                place = current.finished.incrementAndGet();
+                current.announce(line(new StringBuilder("FINISH ").append(id).append(' ').append(place).append(' ').append(Math.round(wpm))));
+            }
+        }
+
+        /** Applies an I, D or L line to the engine; returns false, changing nothing, when it is malformed or out of range. */
+        private boolean edit(String message) {
+            if (message.length() < 2 || message.charAt(1) != ' ') return false;
+            char type = message.charAt(0);
+            if (type == 'L') {
+                engine.setTyped(message.substring(2));
+                keystrokes.addAndGet(message.length() - 2);
+                return true;
+            }
+            int space = message.indexOf(' ', 2);
+            if (space < 0) return false;
+            try {
+                int offset = Integer.parseInt(message, 2, space, 10);
+                if (offset < 0 || offset > engine.typedLength()) return false;
+                if (type == 'I') {
+                    engine.onInsert(offset, message.substring(space + 1), System.nanoTime());
+                    keystrokes.addAndGet(message.length() - space - 1);
+                    return true;
+                }
+                if (type != 'D') return false;
+                int length = Integer.parseInt(message, space + 1, message.length(), 10);
+                if (length < 0 || length > engine.typedLength() - offset) return false;
+                engine.onRemove(offset, length, System.nanoTime());
+                keystrokes.incrementAndGet();
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        void send(byte[] message) {
+            outLock.lock();
+            try {
+                control.add(message);
+                ready.signal();
+            } finally {
+                outLock.unlock();
+            }
+        }
+
+        /** Replaces any frame not yet written; progress frames are snapshots, so only the latest matters. */
+        void offerFrame(byte[] latest) {
+            outLock.lock();
+            try {
+                frame = latest;
+                ready.signal();
+            } finally {
+                outLock.unlock();
+            }
+        }
+
+        void writeLoop() {
+            List<byte[]> batch = new ArrayList<>();
+            try (OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 2048)) {
+                while (true) {
+                    outLock.lock();
+                    try {
+                        while (control.isEmpty() && frame == null && !closed) ready.await();
+                        if (closed) return;
+                        batch.addAll(control);
+                        control.clear();
+                        if (frame != null) { batch.add(frame); frame = null; }
+                    } finally {
+                        outLock.unlock();
+                    }
+                    for (byte[] message : batch) out.write(message);
+                    out.flush();
+                    batch.clear();
+                }
+            } catch (IOException | InterruptedException e) {
+                close();
+            }
+        }
+
+        void close() {
+            outLock.lock();
+            try {
+                if (closed) return;
+                closed = true;
+                ready.signal();
+            } finally {
+                outLock.unlock();
+            }
+            connected.decrementAndGet();
+            try { socket.close(); } catch (IOException e) {}
+            Race current = race;
+            if (current != null && current.startNanos != 0) {
+                current.announce(line(new StringBuilder("LEFT ").append(id)));
+                current.dirty.set(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RawTerminal:
+ * Character-at-a-time console I/O for Unix terminals, so the console
+ * edition can time every keystroke and color the passage as it is typed.
+ * - stty turns off line buffering and echo; the previous settings are put
+ *   back on close() and by a shutdown hook (Ctrl-C still interrupts)
+ * - Input is decoded from a buffered channel on stdin; one read() returns
+ *   every character that has arrived, so a paste is handled as one batch
+ * - Output is collected in frame() and sent by flush() as a single write
+ *   of UTF-8 bytes; moveTo() appends the shortest relative cursor moves
+ *
+ * Output post-processing stays on, so "\n" still starts a new line and
+ * ordinary System.out printing keeps working in between frames.
+ */
+public class RawTerminal implements Closeable {
+
+    private final String savedSettings;
+    private final int columns;
+    private final Thread restoreHook = new Thread(this::interrupted);
+    private final FileChannel input = new FileInputStream(FileDescriptor.in).getChannel();
+    private final FileChannel output = new FileOutputStream(FileDescriptor.out).getChannel();
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final ByteBuffer inBytes = ByteBuffer.allocate(1024), outBytes = ByteBuffer.allocate(4096);
+    private final CharBuffer inChars = CharBuffer.allocate(1024);
+    private final StringBuilder frame = new StringBuilder(256);
+    private char[] frameChars = new char[256];
+    private CharBuffer frameBuffer = CharBuffer.wrap(frameChars);
+    private int row, column;
+    private boolean restored;
+
+    private RawTerminal(String savedSettings, int columns) {
+        this.savedSettings = savedSettings;
+        this.columns = columns;
+    }
+
+    /**
+     * Switches the controlling terminal to character input. Returns null
+     * when there is no terminal or no stty (e.g. input is piped, Windows).
+     */
+    public static RawTerminal open() {
+        if (System.console() == null || File.separatorChar != '/') return null;
+        try {
+            String saved = stty("-g");
+            int columns = 80;
+            try {
+                String[] size = stty("size").split(" ");
+                if (size.length == 2 && Integer.parseInt(size[1]) > 0) columns = Integer.parseInt(size[1]);
+            } catch (NumberFormatException e) {}
+            stty("-icanon", "-echo", "-ixon", "min", "1", "time", "0");
+            RawTerminal terminal = new RawTerminal(saved, columns);
+            Runtime.getRuntime().addShutdownHook(terminal.restoreHook);
+            return terminal;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String stty(String... args) throws IOException {
+        String[] command = new String[args.length + 1];
+        command[0] = "stty";
+        System.arraycopy(args, 0, command, 1, args.length);
+        Process process = new ProcessBuilder(command).redirectInput(ProcessBuilder.Redirect.from(new File("/dev/tty"))).start();
+        String result = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        try {
+            if (process.waitFor() != 0) throw new IOException("stty " + String.join(" ", args) + " failed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        return result;
+    }
+
+    public int columns() { return columns; }
+
+    /**
+     * Blocks until at least one character is available and returns all
+     * that have arrived, or null at end of input. The buffer is reused by
+     * the next call.
+     */
+    public CharBuffer read() throws IOException {
+        inChars.clear();
+        while (true) {
+            inBytes.flip();
+            decoder.decode(inBytes, inChars, false);
+            inBytes.compact();
+            if (inChars.position() > 0) return inChars.flip();
+            if (input.read(inBytes) < 0) return null;
+        }
+    }
+
+    /** Reads until Enter, e.g. for "press ENTER" prompts. */
+    public void awaitEnter() throws IOException {
+        CharBuffer keys;
+        while ((keys = read()) != null) {
+            while (keys.hasRemaining()) if (keys.get() == '\n') return;
+        }
+    }
+
+    /** Output collected for the next flush(). */
+    public StringBuilder frame() { return frame; }
+
+    /** Declares that the cursor is now at (row, column) of the caller's layout. */
+    public void cursorAt(int row, int column) {
+        this.row = row;
+        this.column = column;
+    }
+
+    /** Appends one character cell at the cursor. */
+    public void put(char c) {
+        frame.append(c);
+        column++;
+    }
+
+    /** Appends the escape sequences that move the cursor to (row, column). */
+    public void moveTo(int row, int column) {
+        if (row < this.row) frame.append("\033[").append(this.row - row).append('A');
+        else if (row > this.row) frame.append("\033[").append(row - this.row).append('B');
+        if (row == this.row && column == this.column - 1 && this.column < columns) { // not after a row's last cell, where the cursor waits to wrap
+            frame.append('\b');
+        } else if (column != this.column || row != this.row) {
+            frame.append('\r');
+            if (column > 0) frame.append("\033[").append(column).append('C');
+        }
+        cursorAt(row, column);
+    }
+
+    /** Sends the frame as one write. */
+    public void flush() throws IOException {
+        int length = frame.length();
+        if (length == 0) return;
+        if (length > frameChars.length) {
+            frameChars = new char[Math.max(length, frameChars.length * 2)];
+            frameBuffer = CharBuffer.wrap(frameChars);
+        }
+        frame.getChars(0, length, frameChars, 0);
+        frame.setLength(0);
+        frameBuffer.clear().limit(length);
+        System.out.flush();
+        encoder.reset();
+        while (true) {
+            boolean overflow = encoder.encode(frameBuffer, outBytes, true).isOverflow();
+            outBytes.flip();
+            while (outBytes.hasRemaining()) output.write(outBytes);
+            outBytes.clear();
+            if (!overflow) break;
+        }
+    }
+
+    /** Shutdown hook: resets colors, ends the line and restores the settings. */
+    private void interrupted() {
+        try { output.write(ByteBuffer.wrap("\033[0m\n".getBytes(StandardCharsets.US_ASCII))); } catch (IOException e) {}
+        restore();
+    }
+
+    private synchronized void restore() {
+        if (restored) return;
+        restored = true;
+        try { stty(savedSettings); } catch (IOException e) {}
+    }
+
+    /** Restores the terminal settings. */
+    @Override
+    public void close() {
+        restore();
+        try { Runtime.getRuntime().removeShutdownHook(restoreHook); } catch (IllegalStateException e) {}
+    }
+}
@@ -0,0 +1,127 @@
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * RenderScheduler:
+ * Frame pacing for the typing screen. Input only marks the view dirty; the
+ * render runs on the EDT at most once per display frame, however many
+ * events arrived, and statistics refresh on their own slower cadence.
+ * - Frame length from the screen refresh rate (60 Hz when unknown), or the
+ *   precisiontyper.fps property
+ * - One-shot Swing timer aligned to the next frame boundary
+ * - Counters for rendered frames, coalesced input events and dropped
+ *   frames: display frames that passed after the content was due, either
+ *   because the EDT was busy or because a render overran its budget
+ * - A TypingMetrics.Frame Flight Recorder event per render, allocated only
+ *   while a recording enables it
+ *
+ * All methods are called on the EDT.
+ */
+public class RenderScheduler {
+
+    private final Runnable render, stats;
+    private final long frameNanos;
+    private final Timer frameTimer, statsTimer;
+    private boolean dirty, scheduled;
+    private long lastFrame, dueAt, generation;
+    private long frames, events, dropped, worstNanos, eventsAtFrame;
+
+    public RenderScheduler(Runnable render, Runnable stats, int statsMillis) {
+        this.render = render;
+        this.stats = stats;
+        this.frameNanos = 1_000_000_000L / refreshRate();
+        frameTimer = new Timer(0, e -> flush());
+        frameTimer.setRepeats(false);
+        statsTimer = new Timer(statsMillis, e -> stats.run());
+    }
+
+    private static int refreshRate() {
+        Integer fps = Integer.getInteger("precisiontyper.fps");
+        if (fps != null && fps > 0) return fps;
+        if (GraphicsEnvironment.isHeadless()) return 60;
+        DisplayMode mode = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode();
+        return mode.getRefreshRate() > 0 ? mode.getRefreshRate() : 60;
+    }
+
+    /** Records an input event; the render follows at the next frame boundary. */
+    public void markDirty() {
+        events++;
+        dirty = true;
+        if (scheduled) return;
+        scheduled = true;
+        long now = System.nanoTime();
+        long wait = lastFrame + frameNanos - now;
+        dueAt = now + Math.max(0, wait);
+        if (wait <= 0) {
+            SwingUtilities.invokeLater(this::flush);
+        } else {
+            frameTimer.setInitialDelay((int) Math.max(1, wait / 1_000_000L));
+            frameTimer.restart();
+        }
+    }
+
+    private void flush() {
+        scheduled = false;
+        if (!dirty) return;
+        dirty = false;
+        long start = System.nanoTime(), round = generation;
+        lastFrame = start;
+        TypingMetrics.Frame event = TypingMetrics.framesEnabled() ? new TypingMetrics.Frame() : null;
+        if (event != null) event.begin();
+        render.run();
+        if (round != generation) return; // the render ended the round (and showed its summary)
+        long end = System.nanoTime(), late = (end - dueAt) / frameNanos;
+        frames++;
+        worstNanos = Math.max(worstNanos, end - start);
+        dropped += late;
+        if (event != null && event.shouldCommit()) {
+            event.events = (int) (events - eventsAtFrame);
+            event.dropped = late;
+            event.commit();
+        }
+        eventsAtFrame = events;
+    }
+
+    /** Starts the statistics cadence, e.g. when the first key of a round is typed. */
+    public void start() {
+        if (!statsTimer.isRunning()) statsTimer.start();
+    }
+
+    /**
+     * Stops the statistics cadence and drops any pending frame, so the next
+     * markDirty() schedules a fresh one. A flush already posted with
+     * invokeLater finds nothing dirty.
+     */
+    public void stop() {
+        statsTimer.stop();
+        frameTimer.stop();
+        dirty = false;
+        scheduled = false;
+    }
+
+    /** Clears the counters for a new round. */
+    public void reset() {
+        generation++;
+        frames = events = dropped = worstNanos = eventsAtFrame = 0;
+    }
+
+    public long frameNanos() { return frameNanos; }
+
+    public long frames() { return frames; }
+
+    /** Input events received; events minus frames were folded into an earlier frame. */
+    public long events() { return events; }
+
+    public long dropped() { return dropped; }
+
+    /** Longest render so far, in nanoseconds. */
+    public long worstNanos() { return worstNanos; }
+
+    /** One line for tooltips and the round summary. */
+    public String summary() {
+        return String.format("%d frames for %d input events | %d dropped | worst %.1f ms of a %.1f ms budget (%d Hz)",
+                frames, events, dropped, worstNanos / 1e6, frameNanos / 1e6, 1_000_000_000L / frameNanos);
+    }
+}
@@ -0,0 +1,218 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SessionRecorder:
+ * Writes every round as a compact binary keystroke log through a buffered
+ * NIO channel, so sessions can be replayed exactly by SessionReplay.
+ *
+ * File layout (one file per app run, many rounds):
+ *   "PTSL" magic, version byte
+ *   ROUND  varlong epoch millis, string passage id, string target text,
+ *          flags byte (ALIGNED when the round starts with alignment scoring)
+ *   INSERT varlong delta nanos, varint offset, varint count, count varint chars
+ *   REMOVE varlong delta nanos, varint offset, varint length
+ *   END    varlong delta nanos
+ *   ALIGN  varlong delta nanos, byte 1 or 0: alignment scoring turned on or off
+ * Strings are a varint byte length followed by UTF-8. Deltas are relative to
+ * the previous event of the round (the first one to the round start).
+ * Version 1 logs have no flags byte and no ALIGN events.
+ *
+ * Recording goes to sessions/ in the working directory; set
+ * -Dprecisiontyper.record=false to turn it off, or point
+ * -Dprecisiontyper.sessions at another directory. Only the newest
+ * precisiontyper.sessions.keep logs (default 50) are kept; older ones are
+ * deleted when a new log is opened.
+ */
+public class SessionRecorder implements Closeable {
+
+    static final int MAGIC = 0x5054534C; // "PTSL"
+    static final byte VERSION = 2;
+    static final byte ROUND = 1, INSERT = 2, REMOVE = 3, END = 4, ALIGN = 5;
+    static final byte ALIGNED = 1;
+    static final int DEFAULT_KEEP = 50;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private String pendingId, pendingTarget;
+    private boolean pendingAlign;
+    private long lastNanos;
+    private boolean roundOpen;
+
+    private SessionRecorder(FileChannel channel) {
+        this.channel = channel;
+        if (channel != null) {
+            buffer.putInt(MAGIC).put(VERSION);
+        }
+    }
+
+    /**
+     * Opens a new log for this run, named after the edition and start time.
+     * Returns a recorder that ignores every call when recording is disabled
+     * or the directory cannot be written.
+     */
+    public static SessionRecorder open(String edition) {
+        if ("false".equals(System.getProperty("precisiontyper.record"))) return new SessionRecorder(null);
+        try {
+            Path dir = Paths.get(System.getProperty("precisiontyper.sessions", "sessions"));
+            Files.createDirectories(dir);
+            prune(dir, Math.max(1, Integer.getInteger("precisiontyper.sessions.keep", DEFAULT_KEEP)) - 1);
+            String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS"));
+            Path file = dir.resolve(edition + "-" + stamp + ".ptsl");
+            return new SessionRecorder(FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+        } catch (IOException e) {
+            return new SessionRecorder(null);
+        }
+    }
+
+    /** Deletes the oldest logs in dir until at most keep remain; logs that cannot be deleted are left alone. */
+    static void prune(Path dir, int keep) throws IOException {
+        List<Path> logs = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.ptsl")) {
+            for (Path log : stream) logs.add(log);
+        }
+        if (logs.size() <= keep) return;
+        Map<Path, FileTime> modified = new HashMap<>();
+        for (Path log : logs) modified.put(log, Files.getLastModifiedTime(log));
+        logs.sort(Comparator.comparing(modified::get));
+        for (int i = 0; i < logs.size() - keep; i++) {
+            try { Files.deleteIfExists(logs.get(i)); } catch (IOException e) {}
+        }
+    }
+
+    public boolean isRecording() { return channel != null; }
+
+    /**
+     * Begins a round. Nothing is written until the first keystroke, so
+     * passages that are skipped without typing leave no trace.
+     */
+    public void startRound(String passageId, String target, boolean align, long nanoTime) {
+        if (channel == null) return;
+        if (roundOpen) endRound(nanoTime);
+        pendingId = passageId;
+        pendingTarget = target;
+        pendingAlign = align;
+        lastNanos = nanoTime;
+    }
+
+    /** Alignment scoring turned on or off mid-round, so a replay scores the rest alike. */
+    public void align(long nanoTime, boolean on) {
+        if (channel == null) return;
+        if (!roundOpen) {
+            pendingAlign = on; // before the first keystroke: part of the header
+            return;
+        }
+        beginEvent(ALIGN, nanoTime, 1);
+        buffer.put(on ? (byte) 1 : 0);
+    }
+
+    public void insert(long nanoTime, int offset, CharSequence text) {
+        if (!beginEvent(INSERT, nanoTime, 10 + 3 * text.length())) return;
+        putVarint(offset);
+        putVarint(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            if (buffer.remaining() < 3) flush();
+            putVarint(text.charAt(i));
+        }
+    }
+
+    public void remove(long nanoTime, int offset, int length) {
+        if (!beginEvent(REMOVE, nanoTime, 0)) return;
+        putVarint(offset);
+        putVarint(length);
+    }
+
+    /** Ends the current round and pushes it to the file. */
+    public void endRound(long nanoTime) {
+        pendingId = pendingTarget = null;
+        if (channel == null || !roundOpen) return;
+        ensure(11);
+        buffer.put(END);
+        putVarlong(nanoTime - lastNanos);
+        roundOpen = false;
+        flush();
+    }
+
+    @Override
+    public void close() {
+        if (channel == null) return;
+        try {
+            if (roundOpen) endRound(lastNanos);
+            flush();
+            channel.close();
+        } catch (IOException e) {}
+    }
+
+    private boolean beginEvent(byte type, long nanoTime, int payload) {
+        if (channel == null) return false;
+        if (!roundOpen) {
+            if (pendingTarget == null) return false;
+            writeRoundHeader();
+        }
+        ensure(Math.min(32 + payload, buffer.capacity()));
+        buffer.put(type);
+        putVarlong(nanoTime - lastNanos);
+        lastNanos = nanoTime;
+        return true;
+    }
+
+    private void writeRoundHeader() {
+        byte[] id = pendingId.getBytes(StandardCharsets.UTF_8);
+        byte[] target = pendingTarget.getBytes(StandardCharsets.UTF_8);
+        ensure(1 + 10 + 5 + id.length + 5);
+        buffer.put(ROUND);
+        putVarlong(System.currentTimeMillis());
+        putVarint(id.length);
+        buffer.put(id);
+        putVarint(target.length);
+        for (int i = 0; i < target.length; ) {
+            if (!buffer.hasRemaining()) flush();
+            int n = Math.min(buffer.remaining(), target.length - i);
+            buffer.put(target, i, n);
+            i += n;
+        }
+        ensure(1);
+        buffer.put(pendingAlign ? ALIGNED : 0);
+        roundOpen = true;
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) flush();
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException e) {}
+        buffer.clear();
+    }
+
+    private void putVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void putVarlong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import javax.swing.JLabel;
+import javax.swing.text.Segment;
+
+/**
+ * SessionReplay:
+ * Decodes SessionRecorder logs and pushes them, without a window and as
+ * fast as the CPU allows, through the same scoring path as the typing
+ * screen: TypingEngine scoring and statistics and (with --styles) TextCanvas
+ * state updates.
+ * - Reproduces a reported session keystroke for keystroke
+ * - Prints a checksum of the final scores, so scoring changes can be
+ *   regression-tested against a folder of real sessions
+ * - Reports sessions/s and keystrokes/s as a load generator for profiling
+ *
+ * Usage (files or directories, default sessions/):
+ *   javac -d out -sourcepath . SessionReplay.java
+ *   java -Djava.awt.headless=true -cp out SessionReplay [--styles] [--rounds] [--repeat n] [paths...]
+ */
+public class SessionReplay {
+
+    /** Receives the events of a log as they are decoded; times are nanos since the round start. */
+    interface Listener {
+        void round(String passageId, String target, boolean align, long epochMillis);
+        void insert(long nanos, int offset, Segment text);
+        void remove(long nanos, int offset, int length);
+        void align(long nanos, boolean on);
+        void end(long nanos);
+    }
+
+    /**
+     * Decodes one log. A log cut short by a crash replays up to its last
+     * complete event; anything else malformed is an IOException.
+     */
+    static void read(ByteBuffer log, Listener listener) throws IOException {
+        if (log.remaining() < 5 || log.getInt() != SessionRecorder.MAGIC) throw new IOException("not a session log");
+        byte version = log.get();
+        if (version < 1 || version > SessionRecorder.VERSION) throw new IOException("unsupported session log version");
+        Segment text = new Segment(new char[256], 0, 0);
+        long nanos = 0;
+        boolean open = false;
+        try {
+            while (log.hasRemaining()) {
+                byte type = log.get();
+                switch (type) {
+                    case SessionRecorder.ROUND:
+                        if (open) listener.end(nanos);
+                        long millis = getVarlong(log);
+                        String id = getString(log);
+                        String target = getString(log);
+                        boolean align = version >= 2 && (log.get() & SessionRecorder.ALIGNED) != 0;
+                        nanos = 0;
+                        open = true;
+                        listener.round(id, target, align, millis);
+                        break;
+                    case SessionRecorder.INSERT: {
+                        long time = nanos + getVarlong(log);
+                        int offset = getVarint(log), count = getVarint(log);
+                        if (count > text.array.length) text.array = new char[Math.max(count, text.array.length * 2)];
+                        for (int i = 0; i < count; i++) text.array[i] = (char) getVarint(log);
+                        text.count = count;
+                        nanos = time;
+                        listener.insert(nanos, offset, text);
+                        break;
+                    }
+                    case SessionRecorder.REMOVE: {
+                        long time = nanos + getVarlong(log);
+                        int offset = getVarint(log), length = getVarint(log);
+                        nanos = time;
+                        listener.remove(nanos, offset, length);
+                        break;
+                    }
+                    case SessionRecorder.ALIGN: {
+                        if (version < 2) throw new IOException("corrupt session log at byte " + (log.position() - 1));
+                        long time = nanos + getVarlong(log);
+                        boolean on = log.get() != 0;
+                        nanos = time;
+                        listener.align(nanos, on);
+                        break;
+                    }
+                    case SessionRecorder.END:
+                        nanos += getVarlong(log);
+                        open = false;
+                        listener.end(nanos);
+                        break;
+                    default:
+                        throw new IOException("corrupt session log at byte " + (log.position() - 1));
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            // Truncated tail: keep what was decoded.
+        }
+        if (open) listener.end(nanos);
+    }
+
+    /** Replays rounds through the scoring path and accumulates totals. */
+    static class Replayer implements Listener {
+        private final TypingEngine engine = new TypingEngine(4096);
+        private final KeystrokeTimeline timeline = engine.timeline();
+        private final TextCanvas highlighter;
+        private final JLabel timerLabel = new JLabel(), wpmLabel = new JLabel(), accuracyLabel = new JLabel();
+        private final boolean printRounds;
+        private String passageId;
+        long rounds, completed, keystrokes, checksum;
+
+        Replayer(boolean styles, boolean printRounds) {
+            this.highlighter = styles ? new TextCanvas() : null;
+            this.printRounds = printRounds;
+        }
+
+        public void round(String passageId, String target, boolean align, long epochMillis) {
+            this.passageId = passageId;
+            engine.reset(target, align);
+            if (highlighter != null) highlighter.setTarget(target);
+        }
+
+        public void insert(long nanos, int offset, Segment text) {
+            engine.onInsert(offset, text, nanos);
+            keystrokes += text.count;
+            checkProgress(nanos, offset);
+        }
+
+        public void remove(long nanos, int offset, int length) {
+            engine.onRemove(offset, length, nanos);
+            keystrokes++;
+            checkProgress(nanos, offset);
+        }
+
+        public void align(long nanos, boolean on) {
+            engine.setAligning(on);
+        }
+
+        public void end(long nanos) {
+            rounds++;
+            if (engine.isComplete()) completed++;
+            checksum = checksum * 31 + ((long) engine.correctCount() << 32 | engine.typedLength()) + engine.firstErrorIndex();
+            if (printRounds) {
+                long end = timeline.isEmpty() ? 0 : timeline.lastNanos();
+                System.out.printf("%-32s %6d/%-6d typed %6d  %s  %6.1f WPM  %5.1f%% accuracy%n", passageId,
+                        engine.correctCount(), engine.targetLength(), engine.typedLength(),
+                        engine.isComplete() ? "done" : "open", timeline.wpm(end), timeline.accuracy());
+            }
+        }
+
+        /**
+         * PrecisionTyper's frame styling and statistics refresh, both run
+         * per event here for the heaviest load; end() takes the place of
+         * the completion check.
+         */
+        private void checkProgress(long now, int changedFrom) {
+            if (highlighter != null) PrecisionTyper.styleTarget(highlighter, engine, changedFrom);
+            PrecisionTyper.showStats(engine, now, timerLabel, wpmLabel, accuracyLabel, null);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean styles = false, printRounds = false;
+        int repeat = 1;
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--styles": styles = true; break;
+                case "--rounds": printRounds = true; break;
+                case "--repeat": repeat = Integer.parseInt(args[++i]); break;
+                default: collect(Paths.get(args[i]), files);
+            }
+        }
+        if (!hasPath(args)) collect(Paths.get("sessions"), files);
+        if (files.isEmpty()) {
+            System.out.println("No session logs found.");
+            return;
+        }
+        List<ByteBuffer> logs = new ArrayList<>();
+        for (Path file : files) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                logs.add(log);
+            }
+        }
+
+        Replayer replayer = new Replayer(styles, printRounds);
+        long start = System.nanoTime();
+        for (int r = 0; r < repeat; r++) {
+            for (int i = 0; i < logs.size(); i++) {
+                try {
+                    read(logs.get(i).duplicate(), replayer);
+                } catch (IOException e) {
+                    if (r == 0) System.out.println(files.get(i) + ": " + e.getMessage());
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long sessions = (long) logs.size() * repeat;
+        System.out.printf("%d sessions, %d rounds (%d completed), %d keystrokes in %.3f s%n",
+                sessions, replayer.rounds, replayer.completed, replayer.keystrokes, seconds);
+        System.out.printf("%.0f sessions/s, %.0f keystrokes/s%s%n", sessions / seconds, replayer.keystrokes / seconds,
+                styles ? " (with styles)" : "");
+        System.out.printf("Score checksum: %016x%n", replayer.checksum);
+    }
+
+    private static boolean hasPath(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--repeat")) i++;
+            else if (!args[i].startsWith("--")) return true;
+        }
+        return false;
+    }
+
+    private static void collect(Path path, List<Path> files) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> listing = Files.list(path)) {
+                listing.filter(p -> p.toString().endsWith(".ptsl")).sorted().forEach(files::add);
+            }
+        } else if (Files.isRegularFile(path)) {
+            files.add(path);
+        }
+    }
+
+    private static int getVarint(ByteBuffer in) throws IOException {
+        long value = getVarlong(in);
+        if (value > Integer.MAX_VALUE) throw new IOException("corrupt session log at byte " + in.position());
+        return (int) value;
+    }
+
+    private static long getVarlong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long)(b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("corrupt session log at byte " + in.position());
+    }
+
+    private static String getString(ByteBuffer in) throws IOException {
+        int length = getVarint(in);
+        if (length > in.remaining()) throw new BufferUnderflowException();
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
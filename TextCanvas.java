@@ -0,0 +1,303 @@
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.Map;
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+
+/**
+ * TextCanvas:
+ * Lightweight view of the target passage that stays cheap on chapter-length
+ * texts, in place of a JTextPane with one styled element per character.
+ * - The text is word-wrapped once per width into an int array of line starts
+ * - Per-character state (remaining, correct, wrong, cursor) is one byte each
+ * - Glyph vectors are built only for painted lines and kept in a small
+ *   direct-mapped cache, so memory does not grow with the passage
+ * - Paint covers the clip only: the visible lines, or the strip of lines
+ *   whose states changed; update() repaints just those strips
+ *
+ * States are read from a ProgressTracker, and the view scrolls to keep the
+ * typing position in sight.
+ */
+public class TextCanvas extends JComponent implements Scrollable {
+
+    private static final long serialVersionUID = 1L;
+    static final byte REMAINING = 0, CORRECT = 1, WRONG = 2, CURSOR = 3;
+
+    private static final Color GREEN_TEXT = new Color(100, 255, 100);
+    private static final Color RED_TEXT = new Color(255, 100, 100);
+    private static final Color GREY_TEXT = new Color(120, 120, 120);
+    private static final Color CURSOR_COLOR = new Color(255, 255, 0, 100);
+    private static final Color[] TEXT_COLORS = {GREY_TEXT, GREEN_TEXT, RED_TEXT, GREY_TEXT};
+    private static final int CACHE_SLOTS = 128;
+    private static final int CONTEXT_LINES = 2;
+    private static final Font DEFAULT_FONT = new Font("Monospaced", Font.BOLD, 26);
+
+    private String target = "";
+    private byte[] states = new byte[0];
+    private int typedLength;
+
+    private int[] lineStarts = new int[64];
+    private int lines, layoutWidth = -1;
+    private int lineHeight = 1, ascent;
+    private final int[] advances = new int[128];
+
+    private transient GlyphVector[] glyphs = new GlyphVector[CACHE_SLOTS]; // caches, rebuilt after deserialization
+    private final int[] glyphLines = new int[CACHE_SLOTS];
+    private transient FontRenderContext glyphContext;
+    private final Rectangle visible = new Rectangle();
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        glyphs = new GlyphVector[CACHE_SLOTS];
+    }
+
+    /** Always paints its whole clip; overridden rather than set, so the constructor calls nothing overridable. */
+    @Override
+    public boolean isOpaque() { return true; }
+
+    /** Bold 26-point Monospaced unless setFont chose another. */
+    @Override
+    public Font getFont() { return isFontSet() ? super.getFont() : DEFAULT_FONT; }
+
+    /** Shows a new target with nothing typed. */
+    public void setTarget(String target) {
+        this.target = target;
+        if (states.length < target.length() || states.length > 4 * target.length() + 1024) states = new byte[target.length()];
+        else Arrays.fill(states, 0, target.length(), REMAINING);
+        typedLength = 0;
+        if (!target.isEmpty()) states[0] = CURSOR;
+        invalidateLayout();
+        scrollToLine(0);
+    }
+
+    public String getTarget() { return target; }
+
+    /** Current state of target[index]. */
+    byte stateAt(int index) { return states[index]; }
+
+    /**
+     * Updates character states against the tracker's typed text. Characters
+     * before changedFrom are assumed unchanged since the last call, so the
+     * work is proportional to the edited range plus the old and new cursor.
+     * Returns whether anything visible changed and a repaint was requested.
+     */
+    public boolean update(ProgressTracker progress, int changedFrom) {
+        int len = target.length();
+        int typed = progress.typedLength();
+        int end = Math.min(len, Math.max(typedLength, typed) + 1);
+        typedLength = typed;
+        int first = -1, last = -1;
+        for (int i = Math.max(0, Math.min(changedFrom, len)); i < end; i++) {
+            byte state = i < typed ? (progress.isCorrect(i) ? CORRECT : WRONG) : i == typed ? CURSOR : REMAINING;
+            if (state == states[i]) continue;
+            states[i] = state;
+            if (first < 0) first = i;
+            last = i;
+        }
+        if (first < 0) return false;
+        if (layoutWidth < 0) return true; // the full repaint after layout is already pending
+        repaint(cellBounds(first, last));
+        scrollToLine(lineOf(Math.min(typed, Math.max(0, len - 1))));
+        return true;
+    }
+
+    /**
+     * Area covering target[first..last]: just those cells when they share a
+     * line whose glyphs are known, else the full-width strip of their lines.
+     */
+    Rectangle cellBounds(int first, int last) {
+        Insets insets = getInsets();
+        int firstLine = lineOf(first), lastLine = lineOf(last), y = insets.top + firstLine * lineHeight;
+        if (firstLine != lastLine || glyphContext == null) return new Rectangle(0, y, getWidth(), (lastLine - firstLine + 1) * lineHeight);
+        int start = lineStarts[firstLine];
+        GlyphVector vector = glyphs(firstLine, start, lineEnd(firstLine));
+        int x0 = insets.left + x(vector, first - start), x1 = insets.left + x(vector, last + 1 - start) + advances[' '];
+        return new Rectangle(x0, y, x1 - x0, lineHeight);
+    }
+
+    private void scrollToLine(int line) {
+        if (layoutWidth < 0 || !(getParent() instanceof JViewport)) return;
+        computeVisibleRect(visible);
+        Insets insets = getInsets();
+        int y = insets.top + line * lineHeight;
+        if (y >= visible.y && y + lineHeight <= visible.y + visible.height) return;
+        int from = Math.max(0, line - CONTEXT_LINES);
+        scrollRectToVisible(new Rectangle(0, insets.top + from * lineHeight, 1, Math.min(visible.height, (line - from + 1 + CONTEXT_LINES) * lineHeight)));
+    }
+
+    // ---- Layout ----
+
+    private void invalidateLayout() {
+        layoutWidth = -1;
+        Arrays.fill(glyphs, null);
+        revalidate();
+        repaint();
+    }
+
+    @Override
+    public void setFont(Font font) {
+        super.setFont(font);
+        invalidateLayout();
+    }
+
+    @Override
+    public void setBounds(int x, int y, int width, int height) {
+        super.setBounds(x, y, width, height);
+        int oldLines = lines;
+        if (layout(width) && lines != oldLines) revalidate();
+    }
+
+    /** Wraps the target for the given component width; returns whether anything changed. */
+    private boolean layout(int width) {
+        Insets insets = getInsets();
+        int available = Math.max(1, width - insets.left - insets.right);
+        if (available == layoutWidth) return false;
+        FontMetrics metrics = getFontMetrics(getFont());
+        lineHeight = metrics.getHeight();
+        ascent = metrics.getAscent();
+        for (char c = 0; c < 128; c++) advances[c] = metrics.charWidth(c < ' ' ? ' ' : c);
+        int n = target.length(), x = 0, lineStart = 0, breakAt = -1;
+        lines = 0;
+        for (int i = 0; i < n; i++) {
+            char c = target.charAt(i);
+            if (c == '\n') {
+                addLine(lineStart);
+                lineStart = i + 1;
+                x = 0;
+                breakAt = -1;
+                continue;
+            }
+            int w = c < 128 ? advances[c] : metrics.charWidth(c);
+            if (x + w > available && i > lineStart && c != ' ') {
+                // Break after the last space of the line, or mid-word when there is none
+                int next = breakAt > lineStart ? breakAt : i;
+                addLine(lineStart);
+                lineStart = next;
+                x = 0;
+                for (int j = next; j < i; j++) x += target.charAt(j) < 128 ? advances[target.charAt(j)] : metrics.charWidth(target.charAt(j));
+                breakAt = -1;
+            }
+            x += w;
+            if (c == ' ') breakAt = i + 1;
+        }
+        addLine(lineStart);
+        layoutWidth = available;
+        Arrays.fill(glyphs, null);
+        return true;
+    }
+
+    private void addLine(int start) {
+        if (lines == lineStarts.length) lineStarts = Arrays.copyOf(lineStarts, lines * 2);
+        lineStarts[lines++] = start;
+    }
+
+    private int lineEnd(int line) { return line + 1 < lines ? lineStarts[line + 1] : target.length(); }
+
+    /** Line holding target[index]. */
+    int lineOf(int index) {
+        int at = Arrays.binarySearch(lineStarts, 0, lines, index);
+        return at < 0 ? -at - 2 : at;
+    }
+
+    int lineCount() { return lines; }
+
+    /** Wraps against the enclosing viewport when there is one, so the preferred height fits its width. */
+    private void ensureLayout() {
+        int width = getParent() instanceof JViewport ? getParent().getWidth() : getWidth();
+        if (width <= 0) width = layoutWidth < 0 ? 800 : layoutWidth + getInsets().left + getInsets().right;
+        layout(width);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) return super.getPreferredSize();
+        ensureLayout();
+        Insets insets = getInsets();
+        return new Dimension(layoutWidth + insets.left + insets.right, lines * lineHeight + insets.top + insets.bottom);
+    }
+
+    // ---- Scrollable ----
+
+    public Dimension getPreferredScrollableViewportSize() { return getPreferredSize(); }
+
+    public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) { return lineHeight; }
+
+    public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+        return Math.max(lineHeight, (visible.height / lineHeight - 1) * lineHeight);
+    }
+
+    public boolean getScrollableTracksViewportWidth() { return true; }
+
+    public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
+    }
+
+    // ---- Paint ----
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        Graphics2D g = (Graphics2D) graphics;
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        ensureLayout();
+        Object hints = Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+        if (hints instanceof Map) g.addRenderingHints((Map<?, ?>) hints);
+        else g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        FontRenderContext context = g.getFontRenderContext();
+        if (!context.equals(glyphContext)) {
+            Arrays.fill(glyphs, null);
+            glyphContext = context;
+        }
+
+        Insets insets = getInsets();
+        int first = Math.max(0, (clip.y - insets.top) / lineHeight);
+        int last = Math.min(lines - 1, (clip.y + clip.height - insets.top) / lineHeight);
+        for (int line = first; line <= last; line++) paintLine(g, line, insets.left, insets.top + line * lineHeight);
+    }
+
+    private void paintLine(Graphics2D g, int line, int left, int top) {
+        int start = lineStarts[line], end = lineEnd(line);
+        GlyphVector vector = glyphs(line, start, end);
+        int baseline = top + ascent;
+        Shape clip = g.getClip();
+        for (int i = start; i < end; ) {
+            byte state = states[i];
+            int run = i + 1;
+            while (run < end && states[run] == state) run++;
+            int x0 = left + x(vector, i - start), x1 = left + x(vector, run - start);
+            if (state == CURSOR) {
+                g.setColor(CURSOR_COLOR);
+                g.fillRect(x0, top, Math.max(x1 - x0, advances[' ']), lineHeight);
+            }
+            g.setColor(TEXT_COLORS[state]);
+            if (state == WRONG) g.fillRect(x0, baseline + 2, x1 - x0, 2);
+            g.clipRect(x0, top, x1 - x0, lineHeight);
+            g.drawGlyphVector(vector, left, baseline);
+            g.setClip(clip);
+            i = run;
+        }
+    }
+
+    /** x of the glyph for the index-th character of a line (the advance sum at the line end). */
+    private static int x(GlyphVector vector, int index) {
+        return (int) Math.round(vector.getGlyphPosition(Math.min(index, vector.getNumGlyphs())).getX());
+    }
+
+    private GlyphVector glyphs(int line, int start, int end) {
+        int slot = line & (CACHE_SLOTS - 1);
+        if (glyphs[slot] != null && glyphLines[slot] == line) return glyphs[slot];
+        char[] chars = new char[end - start];
+        target.getChars(start, end, chars, 0);
+        for (int i = 0; i < chars.length; i++) if (chars[i] < ' ') chars[i] = ' '; // newline and tab cells
+        glyphs[slot] = getFont().createGlyphVector(glyphContext, chars);
+        glyphLines[slot] = line;
+        return glyphs[slot];
+    }
+}
@@ -1,10 +1,19 @@
+import java.io.*;
+import java.net.Socket;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 import java.util.Scanner;
 
 /**
  * ConsoleTypeRacer
  *
  * A simple console-based typing game that measures typing speed and accuracy.
- * Users type a series of predefined sentences, and for each sentence, the program
+ * Users type a series of sentences drawn from the shared passage library
+ * (texts.json, General/Easy by default), and for each sentence, the program
  * calculates:
  *   - Time taken to type the sentence
  *   - Number of correct characters
@@ -12,9 +21,20 @@ import java.util.Scanner;
  *   - Words per minute (WPM)
  *
  * After all rounds are completed, an overall summary is displayed.
+ * On a Unix terminal each keystroke is read and timed as it is typed, and
+ * the sentence is colored in place (see RawTerminal); --line, or piped
+ * input, falls back to reading whole lines.
+ * With --align, correct characters are counted by alignment (see
+ * AlignmentScorer), so one skipped or doubled character is a single error.
+ *
+ * With --server [port] it hosts multiplayer races instead (see RaceServer),
+ * and --join host[:port] [--name name] races against other players.
+ * Every round is recorded to sessions/ for SessionReplay, and its result
+ * is added to the history.bin shared with the Swing edition.
  */
 public class TypeRacerGame {
 
+    /** Built-in fallback when the passage library cannot be loaded. */
     private static final String[] SENTENCES = {
             "Practice makes perfect and consistency is the key to success.",
             "Java is a powerful language for building reliable applications.",
@@ -23,60 +43,380 @@ public class TypeRacerGame {
             "Small progress every day leads to big achievements."
     };
 
+    final String[] passageIds, sentences;
+    private static final String PROMPT = ">> ";
+
+    private final int difficulty;
     private final Scanner scanner = new Scanner(System.in);
+    private final TypingEngine engine = new TypingEngine(4096);
+    private final TypingEngine.Snapshot stats = new TypingEngine.Snapshot();
+    private final CharBuffer key = CharBuffer.allocate(1);
+    boolean align;
+    private SessionRecorder recorder;
+    private HistoryStore history;
+    private RawTerminal terminal;
+    boolean lineMode;
     
     private double totalTime = 0;
     private int totalCorrectChars = 0;
     private int totalChars = 0;
     private int totalWords = 0;
 
-    public static void main(String[] args) {
-        TypeRacerGame game = new TypeRacerGame();
-        game.run();
+    public TypeRacerGame(String[] sentences) {
+        this(builtinIds(sentences.length), sentences, HistoryStore.ANY_DIFFICULTY);
+    }
+
+    public TypeRacerGame(String[] passageIds, String[] sentences, int difficulty) {
+        this.passageIds = passageIds;
+        this.sentences = sentences;
+        this.difficulty = difficulty;
+    }
+
+    private static final String USAGE = "Usage: TypeRacerGame [--align] [--line] [--collection c] [--difficulty d] [--corpus dir]\n"
+            + "       TypeRacerGame --server [port] [--race-size n] [--tick ms] [--collection c] [--difficulty d] [--corpus dir]\n"
+            + "       TypeRacerGame --join host[:port] [--name name]";
+
+    /** Prints the problem and the usage, and exits. */
+    private static void usage(String problem) {
+        System.out.println(problem);
+        System.out.println(USAGE);
+        System.exit(2);
+    }
+
+    /** Parses an option's value as an int in [min, max], or exits with the usage. */
+    private static int intOption(String option, String value, int min, int max) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n >= min && n <= max) return n;
+        } catch (NumberFormatException e) {}
+        usage("Bad value for " + option + ": " + value + " (expected " + min + " to " + max + ")");
+        return min;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String join = null, name = System.getProperty("user.name", "racer");
+        int port = -1, raceSize = 4, tickMillis = 100;
+        boolean align = false, lineMode = false;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            boolean hasValue = i + 1 < args.length;
+            switch (option) {
+                case "--server": port = hasValue && !args[i + 1].startsWith("--") ? intOption(option, args[++i], 0, 65535) : RaceServer.DEFAULT_PORT; break;
+                case "--align": align = true; break;
+                case "--line": lineMode = true; break;
+                case "--join": case "--name": case "--race-size": case "--tick":
+                case "--collection": case "--difficulty": case "--corpus": // the last three are read by fromArgs
+                    if (!hasValue) usage(option + " needs a value");
+                    String value = args[++i];
+                    if (option.equals("--join")) join = value;
+                    else if (option.equals("--name")) name = value;
+                    else if (option.equals("--race-size")) raceSize = intOption(option, value, 1, 1000);
+                    else if (option.equals("--tick")) tickMillis = intOption(option, value, 1, 60_000);
+                    break;
+                default: usage("Unknown option " + option);
+            }
+        }
+        if (port >= 0) {
+            TypeRacerGame pool = fromArgs(args, true);
+            if (pool.sentences.length == 0) {
+                System.out.println("No single-line passages in that collection and difficulty; not starting the race server.");
+                System.exit(1);
+            }
+            System.out.println("Race server on port " + port + " (" + pool.sentences.length + " passages, up to " + raceSize + " racers per race)");
+            new RaceServer(pool.passageIds, pool.sentences, raceSize, tickMillis).serve(port);
+        } else if (join != null) {
+            playOnline(join, name);
+        } else {
+            TypeRacerGame game = fromArgs(args, false);
+            game.align = align;
+            game.lineMode = lineMode;
+            game.run();
+        }
+    }
+
+    /**
+     * Picks one single-line passage per round from the passage library, or
+     * every single-line passage of the pool for a race server.
+     * Accepts --collection, --difficulty and --corpus options.
+     */
+    static TypeRacerGame fromArgs(String[] args, boolean wholePool) {
+        String collection = "general", difficulty = "easy", corpus = null;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--collection")) collection = args[++i];
+            else if (args[i].equals("--difficulty")) difficulty = args[++i];
+            else if (args[i].equals("--corpus")) corpus = args[++i];
+        }
+        PassageStore store;
+        try {
+            store = PassageStore.load(PassageStore.locateTexts(), corpus == null ? null : Paths.get(corpus));
+        } catch (IOException e) {
+            System.out.println("Passage library unavailable (" + e.getMessage() + ") Using the built-in sentences.");
+            return new TypeRacerGame(SENTENCES);
+        }
+        int size = store.poolSize(collection, difficulty);
+        int wanted = wholePool ? size : SENTENCES.length;
+        String[] picked = new String[wanted], ids = new String[wanted];
+        int count = 0;
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Random random = new Random();
+        for (int i = 0; i < size && count < picked.length; i++) {
+            if (!wholePool) { // partial Fisher-Yates shuffle, so the rounds get distinct passages
+                int j = i + random.nextInt(size - i), swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            int passage = store.passage(collection, difficulty, order[i]);
+            String text = store.typingText(passage);
+            if (text.indexOf('\n') < 0) {
+                ids[count] = store.id(passage);
+                picked[count++] = text;
+            }
+        }
+        if (wholePool && count > 0) {
+            picked = java.util.Arrays.copyOf(picked, count);
+            ids = java.util.Arrays.copyOf(ids, count);
+        } else if (count < picked.length) {
+            System.out.println("Not enough single-line " + collection + "/" + difficulty + " passages. Using the built-in sentences.");
+            return new TypeRacerGame(SENTENCES);
+        }
+        return new TypeRacerGame(ids, picked, java.util.Arrays.asList(PassageStore.DIFFICULTIES).indexOf(difficulty));
+    }
+
+    /**
+     * Joins a race on a RaceServer. Each typed line is sent whole and checked
+     * locally; the race is won by the first racer to type the passage exactly.
+     */
+    static void playOnline(String address, String name) throws IOException {
+        int colon = address.lastIndexOf(':');
+        String host = colon < 0 ? address : address.substring(0, colon);
+        int port = colon < 0 ? RaceServer.DEFAULT_PORT : intOption("--join port", address.substring(colon + 1), 1, 65535);
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+             Scanner console = new Scanner(System.in)) {
+            out.println("JOIN " + name);
+            System.out.println("===== CONSOLE TYPE RACER (online) =====");
+            System.out.println("Waiting for other racers...");
+            Map<String, String> names = new HashMap<>();
+            String target = null, self = null, message;
+            while ((message = in.readLine()) != null && !message.equals("GO")) {
+                String[] parts = message.split(" ");
+                if (parts[0].equals("WELCOME")) self = parts[1];
+                else if (parts[0].equals("TEXT")) target = message.substring(5);
+                else if (parts[0].equals("RACE")) {
+                    for (int i = 3; i < parts.length; i++) {
+                        int c = parts[i].indexOf(':');
+                        names.put(parts[i].substring(0, c), parts[i].substring(c + 1));
+                    }
+                    System.out.println("Race " + parts[1] + ": " + String.join(", ", names.values()));
+                }
+            }
+            if (target == null) return;
+
+            // Progress frames and results arrive while the player types.
+            Map<String, Integer> progress = new java.util.concurrent.ConcurrentHashMap<>();
+            java.util.concurrent.CountDownLatch over = new java.util.concurrent.CountDownLatch(1);
+            String me = self;
+            Thread.ofVirtual().start(() -> {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        String[] parts = line.split(" ");
+                        if (parts[0].equals("T")) {
+                            for (int i = 2; i < parts.length; i++) {
+                                int c = parts[i].indexOf(':');
+                                progress.put(parts[i].substring(0, c), Integer.parseInt(parts[i].substring(c + 1)));
+                            }
+                        } else if (parts[0].equals("FINISH") && !parts[1].equals(me)) {
+                            System.out.println("\n" + names.get(parts[1]) + " finished #" + parts[2] + " at " + parts[3] + " WPM");
+                        } else if (parts[0].equals("LEFT")) {
+                            System.out.println("\n" + names.get(parts[1]) + " left the race");
+                        } else if (parts[0].equals("END")) {
+                            System.out.println("\n--- Race Result ---");
+                            for (int i = 1; i < parts.length; i++) {
+                                String[] r = parts[i].split(":");
+                                System.out.printf("%-16s %s%n", names.get(r[0]) + (r[0].equals(me) ? " (you)" : ""),
+                                        r[1].equals("0") ? "did not finish" : "#" + r[1] + "  " + r[2] + " WPM");
+                            }
+                            break;
+                        }
+                    }
+                } catch (IOException e) {}
+                over.countDown();
+            });
+
+            System.out.println("GO! Type the following sentence:");
+            System.out.println(">> " + target);
+            TypingEngine engine = new TypingEngine(16);
+            engine.reset(target, false);
+            while (over.getCount() > 0 && console.hasNextLine()) {
+                String line = console.nextLine();
+                if (over.getCount() == 0) break;
+                out.println("L " + line);
+                engine.setTyped(line);
+                if (engine.isComplete()) {
+                    System.out.println("Done! Waiting for the others...");
+                    break;
+                }
+                StringBuilder standings = new StringBuilder();
+                for (Map.Entry<String, Integer> e : progress.entrySet()) {
+                    if (!e.getKey().equals(me)) standings.append(String.format("  %s %d/%d", names.get(e.getKey()), e.getValue(), target.length()));
+                }
+                System.out.println("Not exact yet (" + engine.correctCount() + "/" + target.length() + " correct). Try again:" + standings);
+            }
+            if (engine.isComplete() || over.getCount() == 0) {
+                try { over.await(); } catch (InterruptedException e) {}
+            }
+            out.println("QUIT");
+        }
+    }
+
+    private static String[] builtinIds(int count) {
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++) ids[i] = "builtin#" + i;
+        return ids;
     }
 
     /**
      * Controls the main flow of the game.
      */
     public void run() {
-        showIntroduction();
-        for (int i = 0; i < SENTENCES.length; i++) {
-            playRound(i + 1, SENTENCES[i]);
+        recorder = SessionRecorder.open("typeracer");
+        try { history = HistoryStore.open(HistoryStore.defaultFile()); } catch (IOException e) {}
+        if (!lineMode) terminal = RawTerminal.open();
+        try {
+            showIntroduction();
+            for (int i = 0; i < sentences.length; i++) {
+                playRound(i + 1, passageIds[i], sentences[i]);
+            }
+        } catch (IOException e) {
+            System.out.println("\nConsole input failed: " + e.getMessage());
+        } finally {
+            if (terminal != null) terminal.close();
         }
         showFinalSummary();
+        recorder.close();
+        if (history != null) history.close();
         scanner.close();
     }
 
-    private void showIntroduction() {
+    private void showIntroduction() throws IOException {
         System.out.println("===== CONSOLE TYPE RACER =====");
         System.out.println("\nPress ENTER to start the game!");
-        scanner.nextLine();
+        if (terminal != null) terminal.awaitEnter(); else scanner.nextLine();
     }
 
     /**
      * Handles the logic for a single round of typing.
      */
-    private void playRound(int roundNumber, String targetSentence) {
+    private void playRound(int roundNumber, String passageId, String targetSentence) throws IOException {
         if (roundNumber == 1) {
             System.out.println("\n--- Round " + roundNumber + " ---");
         } else {
             System.out.println("\n\n--- Round " + roundNumber + " ---");
         }
         System.out.println("Type the following sentence:");
-        System.out.println(">> " + targetSentence);
+        if (terminal != null) {
+            typeLive(passageId, targetSentence);
+            return;
+        }
+        System.out.println(PROMPT + targetSentence);
 
-        long startTime = System.currentTimeMillis();
+        long startTime = System.nanoTime();
         String userInput = scanner.nextLine();
-        long endTime = System.currentTimeMillis();
+        long endTime = System.nanoTime();
+        recorder.startRound(passageId, targetSentence, align, startTime);
+        recorder.insert(endTime, 0, userInput);
+        recorder.endRound(endTime);
 
-        processResults(targetSentence, userInput, startTime, endTime);
+        processResults(passageId, targetSentence, userInput, startTime, endTime);
+    }
+
+    /**
+     * Plays a round on the raw terminal. Typed characters color the target
+     * in place (green when right, red background when wrong) under a live
+     * speed line; each batch of input is answered with one write holding
+     * only the changed cells. Ends when the sentence is typed exactly or on
+     * Enter.
+     */
+    private void typeLive(String passageId, String target) throws IOException {
+        int width = Math.max(PROMPT.length() + 1, terminal.columns()), n = target.length();
+        int statusRow = (PROMPT.length() + n + width - 1) / width;
+        StringBuilder frame = terminal.frame();
+        frame.append(PROMPT).append(target).append('\n');
+        terminal.cursorAt(statusRow, 0);
+        terminal.moveTo(0, PROMPT.length());
+        terminal.flush();
+
+        long startTime = System.nanoTime(), now = startTime;
+        engine.reset(target, align);
+        recorder.startRound(passageId, target, align, startTime);
+        String status = "";
+        boolean done = false;
+        CharBuffer keys;
+        while (!done && (keys = terminal.read()) != null) {
+            now = System.nanoTime();
+            while (keys.hasRemaining() && !done) {
+                char c = keys.get();
+                int at = engine.typedLength();
+                if (c == '\n' || c == '\r') {
+                    done = true;
+                } else if (c == 127 || c == '\b') {
+                    if (!engine.onBackspace(now)) continue;
+                    recorder.remove(now, at - 1, 1);
+                    paintCell(target, at - 1, null, width);
+                } else if (c == 27) {
+                    // Arrow and function keys: ESC [ or ESC O, parameters, then a final byte
+                    if (keys.hasRemaining() && (keys.get(keys.position()) == '[' || keys.get(keys.position()) == 'O')) {
+                        keys.get();
+                        while (keys.hasRemaining()) {
+                            char f = keys.get();
+                            if (f >= '@' && f <= '~') break;
+                        }
+                    }
+                } else if (c >= ' ' && at < n) {
+                    engine.onKey(c, now);
+                    key.clear();
+                    recorder.insert(now, at, key.put(c).flip());
+                    paintCell(target, at, engine.isCorrect(at) ? "\033[32m" : "\033[41m", width);
+                    done = engine.isComplete();
+                }
+            }
+            engine.snapshot(now, stats);
+            String line = String.format("%3.0f WPM | %3.0f%% | %d/%d", stats.wpm, stats.accuracy, stats.correct, n);
+            if (!line.equals(status)) {
+                terminal.moveTo(statusRow, 0);
+                frame.append(line).append("\033[K");
+                terminal.cursorAt(statusRow, line.length());
+                status = line;
+            }
+            int cursor = PROMPT.length() + engine.typedLength();
+            terminal.moveTo(cursor / width, cursor % width);
+            terminal.flush();
+        }
+        terminal.moveTo(statusRow, status.length());
+        frame.append('\n');
+        terminal.flush();
+        recorder.endRound(now);
+
+        processResults(passageId, target, engine.typedText(), startTime, now);
+    }
+
+    /** Redraws target[index] with the given color sequence, or plain when null. */
+    private void paintCell(String target, int index, String color, int width) {
+        int cell = PROMPT.length() + index;
+        terminal.moveTo(cell / width, cell % width);
+        if (color != null) terminal.frame().append(color);
+        terminal.put(target.charAt(index));
+        if (color != null) terminal.frame().append("\033[0m");
     }
 
     /**
      * Calculates and displays statistics for the current round.
      */
-    private void processResults(String target, String input, long start, long end) {
-        double timeTaken = (end - start) / 1000.0;
+    private void processResults(String passageId, String target, String input, long start, long end) {
+        double timeTaken = (end - start) / 1e9;
         int correctChars = calculateCorrectChars(target, input);
         int wordCount = target.split(" ").length;
 
@@ -87,18 +427,29 @@ public class TypeRacerGame {
         totalWords += wordCount;
 
         displayRoundStats(timeTaken, target.length(), correctChars, wordCount);
+        if (engine.isAligning()) {
+            AlignmentScorer aligner = engine.alignment();
+            System.out.printf("Alignment: %d wrong | %d extra | %d skipped%n",
+                    aligner.substitutions(), aligner.insertions(), aligner.deletions() + target.length() - aligner.alignedLength());
+        }
+        if (history != null) {
+            try {
+                history.append(System.currentTimeMillis(), passageId, HistoryStore.CONSOLE, difficulty, end - start,
+                        (wordCount / timeTaken) * 60, ((double) correctChars / target.length()) * 100,
+                        Math.max(target.length(), input.length()) - correctChars, target.length());
+            } catch (IOException e) {}
+        }
     }
 
-    private int calculateCorrectChars(String target, String input) {
-        int correct = 0;
-        int lengthToCompare = Math.min(input.length(), target.length());
-        
-        for (int i = 0; i < lengthToCompare; i++) {
-            if (input.charAt(i) == target.charAt(i)) {
-                correct++;
-            }
-        }
-        return correct;
+    /**
+     * Scores the typed line through the same TypingEngine used by the Swing
+     * edition, so both front ends count correct characters alike. In align
+     * mode the AlignmentScorer counts them instead.
+     */
+    int calculateCorrectChars(String target, String input) {
+        engine.reset(target, align);
+        engine.setTyped(input);
+        return engine.correctCount();
     }
 
     private void displayRoundStats(double time, int totalLen, int correctLen, int words) {
@@ -119,9 +470,21 @@ public class TypeRacerGame {
         System.out.println("\n============================");
         System.out.println("      FINAL SUMMARY");
         System.out.println("============================");
-        System.out.printf("Avg Time per Round: %.2f s%n", totalTime / SENTENCES.length);
+        System.out.printf("Avg Time per Round: %.2f s%n", totalTime / sentences.length);
         System.out.printf("Overall Accuracy:   %.2f%%%n", overallAccuracy);
         System.out.printf("Overall Speed:      %.2f WPM%n", overallWPM);
+        showHistory();
         System.out.println("============================");
     }
+
+    private void showHistory() {
+        if (history == null) return;
+        try {
+            int best = history.personalBest(difficulty);
+            HistoryStore.Trend trend = history.trend(difficulty, 10);
+            if (best < 0) return;
+            System.out.printf("Personal Best:      %.2f WPM%n", history.wpmAt(best));
+            System.out.printf("Last %-2d Average:    %.2f WPM (%+.2f)%n", trend.recent.rounds, trend.recent.wpm, trend.wpmChange());
+        } catch (IOException e) {}
+    }
 }
@@ -0,0 +1,175 @@
+/**
+ * TypingEngine:
+ * The headless core of a typing round, shared by the Swing and console
+ * editions, RaceServer and SessionReplay so they all score keystrokes alike.
+ * - Positional scoring (ProgressTracker) always; alignment scoring
+ *   (AlignmentScorer) on request for passages up to MAX_TARGET characters
+ * - KeystrokeTimeline statistics and, when attached, WeaknessModel samples
+ * - Keystroke calls mutate preallocated state and allocate nothing; results
+ *   come back through primitive getters or a reusable Snapshot
+ * - onKey/onBackspace edit the end of the typed text; onInsert/onRemove
+ *   take the offsets of a document edit
+ *
+ * Not thread-safe: one engine per round in progress, driven by one thread.
+ */
+public class TypingEngine {
+
+    private final ProgressTracker progress = new ProgressTracker();
+    private final AlignmentScorer alignment = new AlignmentScorer();
+    private final KeystrokeTimeline timeline;
+    private final Key key = new Key();
+    private WeaknessModel weakness;
+    private String target = "";
+    private boolean aligning;
+
+    /** Results of an engine read in one call; reuse one instance per caller. */
+    public static final class Snapshot {
+        public int typed, correct, target, firstError, errors;
+        public boolean complete;
+        public double wpm, accuracy;
+    }
+
+    /** One typed character as a CharSequence, refilled for every key. */
+    private static final class Key implements CharSequence {
+        char c;
+        public int length() { return 1; }
+        public char charAt(int index) { return c; }
+        public CharSequence subSequence(int start, int end) { return toString().subSequence(start, end); }
+        public String toString() { return String.valueOf(c); }
+    }
+
+    /** capacity: keystrokes the timeline keeps for its rolling statistics. */
+    public TypingEngine(int capacity) {
+        timeline = new KeystrokeTimeline(capacity);
+    }
+
+    /** Feeds single-character inserts inside the target to the model, with their intervals. */
+    public void setWeakness(WeaknessModel weakness) {
+        this.weakness = weakness;
+    }
+
+    /** Starts a new round: nothing typed, an empty timeline. */
+    public void reset(String target, boolean align) {
+        this.target = target;
+        progress.reset(target);
+        aligning = align && target.length() <= AlignmentScorer.MAX_TARGET;
+        alignment.reset(aligning ? target : "");
+        timeline.reset();
+    }
+
+    /** Turns alignment scoring on or off mid-round; turning it on aligns what is typed so far. */
+    public void setAligning(boolean align) {
+        boolean on = align && target.length() <= AlignmentScorer.MAX_TARGET;
+        if (on && !aligning) {
+            alignment.reset(target);
+            alignment.setTyped(progress.typedText());
+        }
+        aligning = on;
+    }
+
+    // ---- Keystrokes ----
+
+    /** Types c at the end of the typed text; returns whether it counted as correct. */
+    public boolean onKey(char c, long nanoTime) {
+        key.c = c;
+        return onInsert(progress.typedLength(), key, nanoTime) > 0;
+    }
+
+    /** Deletes the last typed character; returns false when nothing was typed. */
+    public boolean onBackspace(long nanoTime) {
+        int length = progress.typedLength();
+        if (length == 0) return false;
+        onRemove(length - 1, 1, nanoTime);
+        return true;
+    }
+
+    /**
+     * Records text inserted at offset. Returns how many of its characters
+     * count as correct: positionally, or with alignment as many as the insert
+     * added matches.
+     */
+    public int onInsert(int offset, CharSequence text, long nanoTime) {
+        int count = text.length();
+        progress.insert(offset, text);
+        int aligned = 0;
+        if (aligning) {
+            aligned = -alignment.correctCount();
+            alignment.insert(offset, text);
+            aligned += alignment.correctCount();
+        }
+        if (weakness != null && count == 1 && offset < target.length()) {
+            weakness.record(offset > 0 ? target.charAt(offset - 1) : ' ', target.charAt(offset),
+                    aligning ? aligned > 0 : progress.isCorrect(offset), timeline.isEmpty() ? -1 : nanoTime - timeline.lastNanos());
+        }
+        int correct = 0;
+        for (int i = 0; i < count; i++) {
+            boolean right = aligning ? i < aligned : progress.isCorrect(offset + i);
+            timeline.record(nanoTime, text.charAt(i), offset + i, right);
+            if (right) correct++;
+        }
+        return correct;
+    }
+
+    /** Records the removal of length characters starting at offset. */
+    public void onRemove(int offset, int length, long nanoTime) {
+        progress.remove(offset, length);
+        if (aligning) alignment.remove(offset, length);
+        timeline.record(nanoTime, KeystrokeTimeline.DELETE, offset, false);
+    }
+
+    /** Replaces the whole typed text, e.g. a line read from the console; the timeline is left alone. */
+    public void setTyped(CharSequence text) {
+        progress.setTyped(text);
+        if (aligning) alignment.setTyped(text);
+    }
+
+    // ---- Results ----
+
+    public int typedLength() { return progress.typedLength(); }
+
+    public int targetLength() { return target.length(); }
+
+    /** Correct characters, by alignment when aligning. */
+    public int correctCount() { return aligning ? alignment.correctCount() : progress.correctCount(); }
+
+    /** Whether the typed text is exactly the target. */
+    public boolean isComplete() { return progress.isComplete(); }
+
+    /** Whether the typed character at index matches the target position. */
+    public boolean isCorrect(int index) { return progress.isCorrect(index); }
+
+    public int firstErrorIndex() { return progress.firstErrorIndex(); }
+
+    public boolean isAligning() { return aligning; }
+
+    public double wpm(long nowNanos) { return timeline.wpm(nowNanos); }
+
+    public double accuracy() { return timeline.accuracy(); }
+
+    public int errors() { return timeline.errors(); }
+
+    public String typedText() { return progress.typedText(); }
+
+    public String target() { return target; }
+
+    /** Fills into with the current results and returns it. */
+    public Snapshot snapshot(long nowNanos, Snapshot into) {
+        into.typed = progress.typedLength();
+        into.correct = correctCount();
+        into.target = target.length();
+        into.firstError = progress.firstErrorIndex();
+        into.errors = timeline.errors();
+        into.complete = progress.isComplete();
+        into.wpm = timeline.wpm(nowNanos);
+        into.accuracy = timeline.accuracy();
+        return into;
+    }
+
+    /** The positional scores, e.g. for TextCanvas styling. */
+    public ProgressTracker progress() { return progress; }
+
+    /** Alignment details; only meaningful while isAligning(). */
+    public AlignmentScorer alignment() { return alignment; }
+
+    public KeystrokeTimeline timeline() { return timeline; }
+}
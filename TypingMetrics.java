@@ -0,0 +1,361 @@
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * TypingMetrics:
+ * Input-to-paint latency of the desktop edition, cheap enough to stay on in
+ * every session.
+ * - Stages per keystroke: received (the document listener is entered),
+ *   scored (tracker, aligner and timeline updated), styled (the frame that
+ *   picked it up updated the TextCanvas) and painted (the canvas paint that
+ *   shows it returned); a frame reports its oldest key
+ * - Click scheduling latency from ClickSoundEngine
+ * - EDT queue depth and lag from a daemon probe that posts a marker every
+ *   100 ms and counts the events dispatched ahead of it
+ * - Every latency goes into a lock-free LatencyHistogram, published through
+ *   JMX (TypingMetricsMXBean) and as JDK Flight Recorder events; the events
+ *   carry no stack traces, and keystroke, frame and click events are only
+ *   allocated while a recording enables them, so those paths allocate
+ *   nothing otherwise
+ * - -Dprecisiontyper.metrics=<file> appends the summary to that file when
+ *   the window closes
+ *
+ * received, scored, styled and painted are called on the EDT.
+ */
+public class TypingMetrics implements TypingMetricsMXBean {
+
+    static final String OBJECT_NAME = "precisiontyper:type=TypingMetrics";
+    private static final long PROBE_MILLIS = 100;
+
+    private final LatencyHistogram scoredLatency = new LatencyHistogram(), styledLatency = new LatencyHistogram();
+    private final LatencyHistogram paintedLatency = new LatencyHistogram(), paintTime = new LatencyHistogram();
+    private final LatencyHistogram edtLag = new LatencyHistogram(), edtDepth = new LatencyHistogram();
+    private final LatencyHistogram noClicks = new LatencyHistogram();
+    private final Path dumpFile;
+    private RenderScheduler scheduler;
+    private volatile ClickSoundEngine clicks;
+    private Thread probe;
+    private volatile long dispatched, lastDepth;
+    private volatile boolean probing;
+    private volatile EventType keystrokeType, inputLatencyType; // looked up by the probe, off the EDT
+    private static volatile EventType frameType; // likewise, for RenderScheduler
+
+    // The frame in flight: keys received but not yet styled, then styled but not yet painted
+    private long pendingSince, scoredAt, paintSince, paintScored, paintStyled;
+    private int pendingKeys, paintKeys;
+    private InputLatency pendingEvent, paintEvent;
+    private Keystroke keystroke;
+
+    public TypingMetrics() {
+        String file = System.getProperty("precisiontyper.metrics");
+        dumpFile = file == null || file.isEmpty() ? null : Paths.get(file);
+    }
+
+    /**
+     * Starts the EDT probe and registers the MXBean. Registration loads the
+     * platform MBean server, so it runs on the probe thread rather than
+     * delaying the first window.
+     */
+    public void start(RenderScheduler scheduler) {
+        this.scheduler = scheduler;
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new CountingQueue());
+        probe = new Thread(this::probeLoop, "edt-probe");
+        probe.setDaemon(true);
+        probe.start();
+    }
+
+    /** Adds click latency once the audio engine is up; it may start after the window. */
+    public void watch(ClickSoundEngine clicks) {
+        this.clicks = clicks;
+    }
+
+    /** Stops the probe and writes the session-end dump when one was asked for. */
+    public void close() {
+        if (probe != null) probe.interrupt();
+        if (dumpFile == null) return;
+        try { dumpSummary(dumpFile.toString()); } catch (IOException e) {}
+    }
+
+    // ---- Keystroke stages ----
+
+    /** An input event entered the document listener at now (System.nanoTime). */
+    public void received(long now) {
+        if (pendingSince == 0) {
+            pendingSince = now;
+            if (enabled(inputLatencyType)) {
+                pendingEvent = new InputLatency();
+                pendingEvent.begin();
+            }
+        }
+        pendingKeys++;
+        if (enabled(keystrokeType)) {
+            keystroke = new Keystroke();
+            keystroke.begin();
+        }
+    }
+
+    private static boolean enabled(EventType type) {
+        return type != null && type.isEnabled();
+    }
+
+    /** Whether RenderScheduler should allocate a Frame event; false until a probe has looked the type up. */
+    static boolean framesEnabled() { return enabled(frameType); }
+
+    /** The event received at the given time has been scored. */
+    public void scored(long received, int offset, int characters, boolean deleted) {
+        long now = System.nanoTime();
+        scoredLatency.record(now - received);
+        scoredAt = now;
+        Keystroke event = keystroke;
+        if (event == null) return;
+        keystroke = null;
+        event.offset = offset;
+        event.characters = characters;
+        event.deleted = deleted;
+        event.commit();
+    }
+
+    /**
+     * A frame styled the canvas. When nothing visible changed (keys past the
+     * end of the target) no paint follows, so its keys end here.
+     */
+    public void styled(boolean repainted) {
+        if (pendingSince == 0) return;
+        long now = System.nanoTime();
+        styledLatency.record(now - pendingSince);
+        if (repainted) {
+            if (paintSince == 0) {
+                paintSince = pendingSince;
+                paintEvent = pendingEvent;
+                paintScored = scoredAt - pendingSince;
+            }
+            paintKeys += pendingKeys;
+            paintStyled = now - paintSince; // a frame whose paint has not come yet is shown by this one
+        }
+        pendingSince = 0;
+        pendingKeys = 0;
+        pendingEvent = null;
+    }
+
+    /** A canvas paint that began at start has returned. */
+    public void painted(long start) {
+        if (paintSince == 0) return;
+        long now = System.nanoTime();
+        paintTime.record(now - start);
+        paintedLatency.record(now - paintSince);
+        InputLatency event = paintEvent;
+        if (event != null) {
+            event.keystrokes = paintKeys;
+            event.scored = paintScored;
+            event.styled = paintStyled;
+            event.paint = now - start;
+            event.commit();
+        }
+        paintSince = 0;
+        paintKeys = 0;
+        paintEvent = null;
+    }
+
+    // ---- EDT probe ----
+
+    /** Counts dispatched events so the probe can tell how many ran ahead of it. */
+    private final class CountingQueue extends EventQueue {
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            dispatched++; // only the EDT writes
+            super.dispatchEvent(event);
+        }
+    }
+
+    /** Lets the keystroke stages see recordings; loading JFR's metadata is kept off the EDT. */
+    void lookUpEventTypes() {
+        keystrokeType = EventType.getEventType(Keystroke.class);
+        inputLatencyType = EventType.getEventType(InputLatency.class);
+        frameType = EventType.getEventType(Frame.class);
+    }
+
+    private void probeLoop() {
+        lookUpEventTypes();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException | SecurityException e) {
+            // a second window in the same JVM keeps the first registration
+        }
+        while (!Thread.currentThread().isInterrupted()) {
+            try { Thread.sleep(PROBE_MILLIS); } catch (InterruptedException e) { return; }
+            if (probing) continue; // a stalled EDT is measured by the probe already waiting
+            probing = true;
+            long posted = System.nanoTime(), before = dispatched;
+            EventQueue.invokeLater(() -> {
+                long lag = System.nanoTime() - posted, depth = Math.max(0, dispatched - before - 1);
+                edtLag.record(lag);
+                edtDepth.record(depth);
+                lastDepth = depth;
+                EdtQueue event = new EdtQueue();
+                if (event.shouldCommit()) {
+                    event.depth = depth;
+                    event.lag = lag;
+                    event.commit();
+                }
+                probing = false;
+            });
+        }
+    }
+
+    // ---- Summary ----
+
+    public String getSummary() {
+        ClickSoundEngine clicks = this.clicks;
+        LatencyHistogram click = clickLatency();
+        StringBuilder sb = new StringBuilder();
+        sb.append("PrecisionTyper latency at ").append(LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS)).append('\n');
+        sb.append(LatencyHistogram.header("us")).append('\n');
+        sb.append(scoredLatency.row("input -> scored", 1e3)).append('\n');
+        sb.append(styledLatency.row("input -> styled", 1e3)).append('\n');
+        sb.append(paintedLatency.row("input -> painted", 1e3)).append('\n');
+        sb.append(paintTime.row("canvas paint", 1e3)).append('\n');
+        sb.append(click.row("click -> audio line", 1e3)).append('\n');
+        sb.append(edtLag.row("EDT probe lag", 1e3)).append('\n');
+        sb.append(LatencyHistogram.header("events")).append('\n');
+        sb.append(edtDepth.row("EDT queue depth", 1)).append('\n');
+        if (scheduler != null) sb.append("Rendering (this round): ").append(scheduler.summary()).append('\n');
+        if (clicks != null) sb.append("Clicks: ").append(clicks.clicksPlayed()).append(" played, ").append(clicks.droppedClicks()).append(" dropped\n");
+        return sb.toString();
+    }
+
+    public String dumpSummary(String path) throws IOException {
+        Path file = Paths.get(path).toAbsolutePath();
+        Files.writeString(file, getSummary() + '\n', StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return file.toString();
+    }
+
+    public void reset() {
+        for (LatencyHistogram h : new LatencyHistogram[]{scoredLatency, styledLatency, paintedLatency, paintTime, edtLag, edtDepth}) h.reset();
+        clickLatency().reset();
+    }
+
+    private LatencyHistogram clickLatency() { return clicks == null ? noClicks : clicks.latencies(); }
+
+    // ---- TypingMetricsMXBean ----
+
+    public long getKeystrokes() { return scoredLatency.count(); }
+
+    public double getInputToScoredP99Micros() { return scoredLatency.percentile(99) / 1e3; }
+
+    public double getInputToStyledP99Micros() { return styledLatency.percentile(99) / 1e3; }
+
+    public double getInputToPaintedP50Micros() { return paintedLatency.percentile(50) / 1e3; }
+
+    public double getInputToPaintedP99Micros() { return paintedLatency.percentile(99) / 1e3; }
+
+    public double getInputToPaintedMaxMicros() { return paintedLatency.max() / 1e3; }
+
+    public double getPaintP99Micros() { return paintTime.percentile(99) / 1e3; }
+
+    public double getClickLatencyP99Micros() { return clickLatency().percentile(99) / 1e3; }
+
+    public long getDroppedClicks() { return clicks == null ? 0 : clicks.droppedClicks(); }
+
+    // Scheduler counters are EDT state; a JMX read may be a frame behind
+    public long getFrames() { return scheduler == null ? 0 : scheduler.frames(); }
+
+    public long getDroppedFrames() { return scheduler == null ? 0 : scheduler.dropped(); }
+
+    public double getEdtLagP99Micros() { return edtLag.percentile(99) / 1e3; }
+
+    public long getEdtQueueDepth() { return lastDepth; }
+
+    public long getEdtQueueDepthMax() { return edtDepth.max(); }
+
+    // ---- Flight Recorder events ----
+
+    @Name("precisiontyper.Keystroke")
+    @Label("Keystroke")
+    @Category("PrecisionTyper")
+    @Description("An input event from the document listener until it was scored")
+    @StackTrace(false)
+    static final class Keystroke extends Event {
+        @Label("Offset")
+        int offset;
+        @Label("Characters")
+        int characters;
+        @Label("Deleted")
+        boolean deleted;
+    }
+
+    @Name("precisiontyper.InputLatency")
+    @Label("Input To Paint")
+    @Category("PrecisionTyper")
+    @Description("From the oldest key of a frame being received until the canvas paint showing it returned")
+    @StackTrace(false)
+    static final class InputLatency extends Event {
+        @Label("Keystrokes")
+        int keystrokes;
+        @Label("Received To Scored")
+        @Timespan(Timespan.NANOSECONDS)
+        long scored;
+        @Label("Received To Styled")
+        @Timespan(Timespan.NANOSECONDS)
+        long styled;
+        @Label("Paint")
+        @Timespan(Timespan.NANOSECONDS)
+        long paint;
+    }
+
+    @Name("precisiontyper.Frame")
+    @Label("Frame")
+    @Category("PrecisionTyper")
+    @Description("One RenderScheduler render of the typing screen")
+    @StackTrace(false)
+    static final class Frame extends Event {
+        @Label("Input Events")
+        int events;
+        @Label("Dropped Frames")
+        long dropped;
+    }
+
+    @Name("precisiontyper.Click")
+    @Label("Click")
+    @Category("PrecisionTyper")
+    @Description("A key click reaching the audio line")
+    @StackTrace(false)
+    static final class Click extends Event {
+        @Label("Latency")
+        @Description("From playClick() until its first samples were queued, plus the audio buffered ahead of them")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    @Name("precisiontyper.EdtQueue")
+    @Label("EDT Queue")
+    @Category("PrecisionTyper")
+    @Description("A probe posted to the event dispatch thread")
+    @StackTrace(false)
+    static final class EdtQueue extends Event {
+        @Label("Depth")
+        @Description("Events dispatched ahead of the probe")
+        long depth;
+        @Label("Lag")
+        @Timespan(Timespan.NANOSECONDS)
+        long lag;
+    }
+}
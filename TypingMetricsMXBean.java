@@ -0,0 +1,46 @@
+/**
+ * TypingMetricsMXBean:
+ * JMX view of TypingMetrics, registered as precisiontyper:type=TypingMetrics
+ * so JConsole, VisualVM or any JMX client can watch a running session.
+ * Latencies are in microseconds and cover the session since start or the
+ * last reset(); frame counters are those of the current round.
+ */
+public interface TypingMetricsMXBean {
+
+    long getKeystrokes();
+
+    double getInputToScoredP99Micros();
+
+    double getInputToStyledP99Micros();
+
+    double getInputToPaintedP50Micros();
+
+    double getInputToPaintedP99Micros();
+
+    double getInputToPaintedMaxMicros();
+
+    double getPaintP99Micros();
+
+    double getClickLatencyP99Micros();
+
+    long getDroppedClicks();
+
+    long getFrames();
+
+    long getDroppedFrames();
+
+    double getEdtLagP99Micros();
+
+    /** Events dispatched ahead of the most recent EDT probe. */
+    long getEdtQueueDepth();
+
+    long getEdtQueueDepthMax();
+
+    /** The same text as the session-end dump. */
+    String getSummary();
+
+    void reset();
+
+    /** Appends the summary to a file; returns its absolute path. */
+    String dumpSummary(String path) throws java.io.IOException;
+}
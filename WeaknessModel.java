@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Random;
+
+/**
+ * WeaknessModel:
+ * Per-user keystroke statistics that steer passage selection toward the
+ * characters and bigrams the user mistypes or hesitates on.
+ * - Dense SYMBOLS x SYMBOLS matrices of bigram counts, errors and mean
+ *   latencies, plus per-character rows; updates allocate nothing
+ * - A BigramIndex holds each passage's bigram counts in compressed sparse
+ *   rows, so ranking a pool is one pass of multiply-adds per passage
+ * - Saved to weakness.bin (replaced atomically) between sessions
+ *
+ * A bigram is a pair of consecutive target characters; its latency is the
+ * time from the keystroke for the first to the keystroke for the second.
+ */
+public class WeaknessModel {
+
+    /** Printable ASCII plus one shared slot for everything else. */
+    static final int SYMBOLS = 96, CELLS = SYMBOLS * SYMBOLS;
+    /** Keystrokes recorded before selection starts to adapt. */
+    public static final int MIN_KEYSTROKES = 200;
+    private static final int MAGIC = 0x5054574D; // "PTWM"
+    private static final int VERSION = 1;
+    private static final long MAX_INTERVAL_NANOS = 2_000_000_000L;
+    private static final float PRIOR = 5;
+    private static final int MAX_SCORED = 2048;
+
+    private final int[] bigramCount = new int[CELLS], bigramErrors = new int[CELLS], bigramTimed = new int[CELLS];
+    private final float[] bigramLatency = new float[CELLS];
+    private final int[] charCount = new int[SYMBOLS], charErrors = new int[SYMBOLS], charTimed = new int[SYMBOLS];
+    private final float[] charLatency = new float[SYMBOLS];
+    private final float[] weights = new float[CELLS], charWeakness = new float[SYMBOLS];
+    private long keystrokes, weightsAt = -1;
+    private final int[] top = new int[8];
+    private final float[] topScores = new float[8];
+
+    static int symbol(char c) { return c >= 32 && c < 127 ? c - 32 : SYMBOLS - 1; }
+
+    /**
+     * Records one typed character. intervalNanos is the time since the
+     * previous keystroke, or -1 when there was none.
+     */
+    public void record(char previous, char target, boolean correct, long intervalNanos) {
+        int t = symbol(target), cell = symbol(previous) * SYMBOLS + t;
+        keystrokes++;
+        charCount[t]++;
+        bigramCount[cell]++;
+        if (!correct) { charErrors[t]++; bigramErrors[cell]++; }
+        if (intervalNanos > 0 && intervalNanos < MAX_INTERVAL_NANOS) {
+            float millis = intervalNanos / 1e6f;
+            charLatency[t] += (millis - charLatency[t]) / ++charTimed[t];
+            bigramLatency[cell] += (millis - bigramLatency[cell]) / ++bigramTimed[cell];
+        }
+    }
+
+    public long keystrokes() { return keystrokes; }
+
+    /**
+     * Weakness of every bigram relative to the user's average (1 = average).
+     * Error rates and latencies are shrunk toward the global figures, so a
+     * rarely typed bigram needs several misses before it stands out.
+     */
+    float[] weights() {
+        if (weightsAt == keystrokes) return weights;
+        long count = 0, errors = 0, timed = 0;
+        double latencySum = 0;
+        for (int c = 0; c < SYMBOLS; c++) {
+            count += charCount[c];
+            errors += charErrors[c];
+            timed += charTimed[c];
+            latencySum += (double) charLatency[c] * charTimed[c];
+        }
+        float errorRate = (errors + 1f) / (count + 20f);
+        float latency = timed == 0 ? 1 : (float) (latencySum / timed);
+        // weakness = (err / errorRate + lat / latency) / 2, with both rates shrunk toward the global ones
+        float errorScale = 0.5f / errorRate, latencyScale = 0.5f / latency;
+        float errorPrior = PRIOR * errorRate, latencyPrior = PRIOR * latency;
+        for (int c = 0; c < SYMBOLS; c++) {
+            charWeakness[c] = (charErrors[c] + errorPrior) / (charCount[c] + PRIOR) * errorScale
+                    + (charLatency[c] * charTimed[c] + latencyPrior) / (charTimed[c] + PRIOR) * latencyScale;
+        }
+        for (int cell = 0, p = 0; p < SYMBOLS; p++) {
+            for (int c = 0; c < SYMBOLS; c++, cell++) {
+                if (bigramCount[cell] == 0) {
+                    weights[cell] = 0.5f + 0.5f * charWeakness[c]; // an untyped bigram is average
+                    continue;
+                }
+                float bigram = (bigramErrors[cell] + errorPrior) / (bigramCount[cell] + PRIOR) * errorScale
+                        + (bigramLatency[cell] * bigramTimed[cell] + latencyPrior) / (bigramTimed[cell] + PRIOR) * latencyScale;
+                weights[cell] = 0.5f * bigram + 0.5f * charWeakness[c];
+            }
+        }
+        weightsAt = keystrokes;
+        return weights;
+    }
+
+    /**
+     * Picks one of rows[0..count) (all rows of the index when rows is null),
+     * at random among the few passages that best exercise weak bigrams.
+     * Pools larger than MAX_SCORED are ranked on a random sample of that
+     * size, which bounds the cost of a selection on large corpora.
+     */
+    public int pick(BigramIndex index, int[] rows, int count, Random random) {
+        float[] w = weights();
+        int scored = Math.min(count, MAX_SCORED);
+        int keep = Math.min(top.length, Math.max(1, scored / 8)), kept = 0;
+        for (int i = 0; i < scored; i++) {
+            int k = scored == count ? i : random.nextInt(count);
+            int row = rows == null ? k : rows[k];
+            float score = index.score(row, w);
+            if (kept < keep || score > topScores[kept - 1]) {
+                int at = kept < keep ? kept++ : kept - 1;
+                while (at > 0 && topScores[at - 1] < score) {
+                    topScores[at] = topScores[at - 1];
+                    top[at] = top[at - 1];
+                    at--;
+                }
+                topScores[at] = score;
+                top[at] = row;
+            }
+        }
+        return top[random.nextInt(kept)];
+    }
+
+    // ---- Persistence ----
+
+    /** weakness.bin in the working directory, or the precisiontyper.weakness property. */
+    public static Path defaultFile() {
+        return Paths.get(System.getProperty("precisiontyper.weakness", "weakness.bin"));
+    }
+
+    /** Loads a saved model; a missing or unreadable file gives an empty one. */
+    public static WeaknessModel load(Path file) {
+        WeaknessModel model = new WeaknessModel();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (in.hasRemaining() && channel.read(in) >= 0);
+            in.flip();
+            if (in.remaining() != model.byteSize() || in.getInt() != MAGIC || in.getInt() != VERSION) return model;
+            model.keystrokes = in.getLong();
+            in.asIntBuffer().get(model.bigramCount);
+            in.position(in.position() + CELLS * 4);
+            in.asIntBuffer().get(model.bigramErrors);
+            in.position(in.position() + CELLS * 4);
+            in.asIntBuffer().get(model.bigramTimed);
+            in.position(in.position() + CELLS * 4);
+            in.asFloatBuffer().get(model.bigramLatency);
+            in.position(in.position() + CELLS * 4);
+            in.asIntBuffer().get(model.charCount);
+            in.position(in.position() + SYMBOLS * 4);
+            in.asIntBuffer().get(model.charErrors);
+            in.position(in.position() + SYMBOLS * 4);
+            in.asIntBuffer().get(model.charTimed);
+            in.position(in.position() + SYMBOLS * 4);
+            in.asFloatBuffer().get(model.charLatency);
+        } catch (IOException e) {
+            return new WeaknessModel();
+        }
+        return model;
+    }
+
+    /** Writes the model to a temporary file and moves it over the old one. */
+    public void save(Path file) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(byteSize()).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putLong(keystrokes);
+        for (int[] a : new int[][]{bigramCount, bigramErrors, bigramTimed}) for (int v : a) out.putInt(v);
+        for (float v : bigramLatency) out.putFloat(v);
+        for (int[] a : new int[][]{charCount, charErrors, charTimed}) for (int v : a) out.putInt(v);
+        for (float v : charLatency) out.putFloat(v);
+        out.flip();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) channel.write(out);
+            channel.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private int byteSize() { return 16 + CELLS * 16 + SYMBOLS * 16; }
+
+    /**
+     * BigramIndex:
+     * Bigram counts of a fixed list of passages in compressed sparse rows;
+     * row i describes passages[i].
+     */
+    public static final class BigramIndex {
+        private final int[] start;
+        private final short[] cells;
+        private final short[] counts;
+        private final int[] totals;
+
+        private BigramIndex(int[] start, short[] cells, short[] counts, int[] totals) {
+            this.start = start;
+            this.cells = cells;
+            this.counts = counts;
+            this.totals = totals;
+        }
+
+        public static BigramIndex build(PassageStore store, int[] passages) {
+            return build(passages.length, row -> store.typingText(passages[row]));
+        }
+
+        static BigramIndex build(int rows, java.util.function.IntFunction<String> texts) {
+            int[] start = new int[rows + 1];
+            int[] totals = new int[rows];
+            int[] scratch = new int[CELLS];
+            int[] touched = new int[CELLS];
+            short[] cells = new short[rows * 32], counts = new short[rows * 32];
+            int size = 0;
+            for (int row = 0; row < rows; row++) {
+                String text = texts.apply(row);
+                int distinct = 0;
+                for (int i = 1; i < text.length(); i++) {
+                    int cell = symbol(text.charAt(i - 1)) * SYMBOLS + symbol(text.charAt(i));
+                    if (scratch[cell]++ == 0) touched[distinct++] = cell;
+                }
+                if (size + distinct > cells.length) {
+                    int grown = Math.max(size + distinct, cells.length * 2);
+                    cells = java.util.Arrays.copyOf(cells, grown);
+                    counts = java.util.Arrays.copyOf(counts, grown);
+                }
+                for (int k = 0; k < distinct; k++) {
+                    int cell = touched[k];
+                    cells[size] = (short) cell;
+                    counts[size++] = (short) Math.min(scratch[cell], Short.MAX_VALUE);
+                    scratch[cell] = 0;
+                }
+                totals[row] = Math.max(1, text.length() - 1);
+                start[row + 1] = size;
+            }
+            return new BigramIndex(start, java.util.Arrays.copyOf(cells, size), java.util.Arrays.copyOf(counts, size), totals);
+        }
+
+        public int rows() { return totals.length; }
+
+        /** Mean weight of the passage's bigrams. */
+        float score(int row, float[] weights) {
+            float sum = 0;
+            for (int k = start[row], end = start[row + 1]; k < end; k++) sum += counts[k] * weights[cells[k]];
+            return sum / totals[row];
+        }
+    }
+}
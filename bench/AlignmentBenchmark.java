@@ -0,0 +1,76 @@
+import javax.swing.text.Segment;
+
+/**
+ * AlignmentBenchmark:
+ * Positional scoring (ProgressTracker, TypeRacerGame.calculateCorrectChars)
+ * against AlignmentScorer, across passage sizes and error patterns.
+ * - keystroke: append the next character, read the correct count, delete
+ *   it again, at the halfway point of the passage
+ * - rescore: score a whole typed line from scratch, as the console does
+ *
+ * Error patterns: none, 5% substitutions, and one character skipped near
+ * the start (which shifts every later character for positional scoring).
+ *
+ * Run from the repository root (options as for TypingBenchmarks):
+ *   javac -d out -sourcepath . bench/AlignmentBenchmark.java
+ *   java -Djava.awt.headless=true -cp out AlignmentBenchmark
+ */
+public class AlignmentBenchmark {
+
+    private static final int[] SIZES = {100, 1_000, 10_000};
+    private static final String[] PATTERNS = {"none", "subst", "skip"};
+
+    public static void main(String[] args) {
+        Bench bench = new Bench(args);
+        for (int size : SIZES) {
+            for (String pattern : PATTERNS) {
+                String target = Bench.passage(size);
+                char[] typed = typed(target, pattern);
+                String params = "size=" + size + " errors=" + pattern;
+                keystroke(bench, target, typed, params);
+                rescore(bench, target, new String(typed), params);
+            }
+        }
+    }
+
+    private static char[] typed(String target, String pattern) {
+        switch (pattern) {
+            case "subst": return Bench.typedWithErrors(target, 0.05);
+            case "skip": return (target.substring(0, 3) + target.substring(4) + target.charAt(0)).toCharArray();
+            default: return target.toCharArray();
+        }
+    }
+
+    private static void keystroke(Bench bench, String target, char[] typed, String params) {
+        int at = typed.length / 2;
+        Segment prefix = new Segment(typed, 0, at), key = new Segment(typed, at, 1);
+
+        ProgressTracker tracker = new ProgressTracker();
+        tracker.reset(target);
+        tracker.insert(0, prefix);
+        bench.run("positional keystroke", params, () -> {
+            tracker.insert(at, key);
+            long correct = tracker.correctCount();
+            tracker.remove(at, 1);
+            return correct;
+        });
+
+        AlignmentScorer aligner = new AlignmentScorer();
+        aligner.reset(target);
+        aligner.insert(0, prefix);
+        bench.run("aligned keystroke", params, () -> {
+            aligner.insert(at, key);
+            long correct = aligner.correctCount();
+            aligner.remove(at, 1);
+            return correct;
+        });
+    }
+
+    private static void rescore(Bench bench, String target, String typed, String params) {
+        TypeRacerGame game = new TypeRacerGame(new String[0]);
+        bench.run("positional rescore", params, () -> game.calculateCorrectChars(target, typed));
+        AlignmentScorer aligner = new AlignmentScorer();
+        aligner.reset(target);
+        bench.run("aligned rescore", params, () -> { aligner.setTyped(typed); return aligner.correctCount(); });
+    }
+}
@@ -0,0 +1,120 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bench:
+ * A small dependency-free harness in the spirit of JMH, so the benchmarks
+ * build with plain javac like the rest of the Java editions.
+ * - Timed warmup and measurement iterations per parameter combination
+ * - Average time per operation with the spread across iterations
+ * - Allocation rate per operation from the thread allocation counter, plus
+ *   collector counts and time (the numbers JMH's GC profiler reports)
+ * - A volatile sink that keeps results alive so the JIT cannot drop them
+ */
+final class Bench {
+
+    /** One benchmark operation; it returns a value that is fed to the sink. */
+    interface Op {
+        long run();
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static volatile long sink;
+
+    private final int warmupIterations, measureIterations;
+    private final long iterationNanos;
+    private final String filter;
+    private boolean headerPrinted;
+
+    Bench(String[] args) {
+        String f = null;
+        int warmup = 3, measure = 5;
+        long millis = 500;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-wi": warmup = Integer.parseInt(args[++i]); break;
+                case "-i": measure = Integer.parseInt(args[++i]); break;
+                case "-ms": millis = Long.parseLong(args[++i]); break;
+                default: f = args[i];
+            }
+        }
+        warmupIterations = warmup;
+        measureIterations = measure;
+        iterationNanos = millis * 1_000_000L;
+        filter = f;
+    }
+
+    /** Runs one benchmark configuration and prints its result row. */
+    void run(String name, String params, Op op) {
+        if (filter != null && !name.contains(filter)) return;
+        if (!headerPrinted) {
+            System.out.printf("%-28s %-34s %12s %10s %12s %6s %8s%n",
+                    "Benchmark", "Params", "ns/op", "+-", "B/op", "gc", "gc ms");
+            headerPrinted = true;
+        }
+        for (int i = 0; i < warmupIterations; i++) iteration(op);
+
+        long threadId = Thread.currentThread().threadId();
+        long gcCount = gcCount(), gcTime = gcTime();
+        long allocated = THREADS.getThreadAllocatedBytes(threadId);
+        long totalOps = 0;
+        List<Double> samples = new ArrayList<>();
+        for (int i = 0; i < measureIterations; i++) {
+            long[] result = iteration(op);
+            totalOps += result[1];
+            samples.add((double) result[0] / result[1]);
+        }
+        allocated = THREADS.getThreadAllocatedBytes(threadId) - allocated;
+
+        double mean = samples.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        double variance = samples.stream().mapToDouble(s -> (s - mean) * (s - mean)).sum() / Math.max(1, samples.size() - 1);
+        System.out.printf("%-28s %-34s %12.1f %10.1f %12.1f %6d %8d%n", name, params, mean, Math.sqrt(variance),
+                (double) allocated / totalOps, gcCount() - gcCount, gcTime() - gcTime);
+    }
+
+    /** Runs the op in batches until the iteration time has passed; returns {nanos, ops}. */
+    private long[] iteration(Op op) {
+        long ops = 0, acc = 0, start = System.nanoTime(), elapsed;
+        int batch = 1;
+        do {
+            for (int i = 0; i < batch; i++) acc += op.run();
+            ops += batch;
+            elapsed = System.nanoTime() - start;
+            if (batch < 1 << 16) batch <<= 1;
+        } while (elapsed < iterationNanos);
+        sink = acc;
+        return new long[]{elapsed, ops};
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) total += Math.max(0, gc.getCollectionCount());
+        return total;
+    }
+
+    private static long gcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) total += Math.max(0, gc.getCollectionTime());
+        return total;
+    }
+
+    /** A repeatable passage of the requested length built from the bundled vocabulary. */
+    static String passage(int size) {
+        String seed = "The quick brown fox jumps over the lazy dog. Programs must be written for people to read. ";
+        StringBuilder sb = new StringBuilder(size);
+        while (sb.length() < size) sb.append(seed);
+        return sb.substring(0, size);
+    }
+
+    /** The target with roughly errorRate of its characters replaced by '#', deterministically. */
+    static char[] typedWithErrors(String target, double errorRate) {
+        char[] typed = target.toCharArray();
+        java.util.Random random = new java.util.Random(42);
+        for (int i = 0; i < typed.length; i++) if (random.nextDouble() < errorRate) typed[i] = '#';
+        return typed;
+    }
+}
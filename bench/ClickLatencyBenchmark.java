@@ -0,0 +1,41 @@
+/**
+ * ClickLatencyBenchmark:
+ * Measures what a key press pays for sound. First the cost of playClick()
+ * on the calling thread, then end-to-end request-to-line latency while
+ * clicking at 15 keys/s (a fast typist) with overlapping clicks.
+ *
+ * Run from the repository root:
+ *   javac -d out -sourcepath . bench/ClickLatencyBenchmark.java
+ *   java -cp out ClickLatencyBenchmark
+ */
+public class ClickLatencyBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        ClickSoundEngine engine = ClickSoundEngine.open();
+        if (!engine.isAvailable()) {
+            System.out.println("No audio line available; playClick() is a no-op on this machine.");
+        }
+
+        int calls = 200_000;
+        long max = 0, start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            long t = System.nanoTime();
+            engine.playClick();
+            max = Math.max(max, System.nanoTime() - t);
+        }
+        double mean = (System.nanoTime() - start) / (double) calls;
+        System.out.printf("playClick() caller cost: mean %.2f us, max %.2f us%n", mean / 1000.0, max / 1000.0);
+
+        Thread.sleep(200);
+        long playedBefore = engine.clicksPlayed();
+        for (int i = 0; i < 45; i++) {
+            engine.playClick();
+            Thread.sleep(1000 / 15);
+        }
+        Thread.sleep(200);
+        System.out.printf("End-to-end click latency: %d clicks, mean %.2f ms, max %.2f ms, dropped %d%n",
+                engine.clicksPlayed() - playedBefore,
+                engine.meanLatencyNanos() / 1e6, engine.maxLatencyNanos() / 1e6, engine.droppedClicks());
+        engine.close();
+    }
+}
@@ -0,0 +1,102 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import javax.swing.border.EmptyBorder;
+import javax.swing.text.Segment;
+
+/**
+ * HighlightBenchmark:
+ * Headless cost of the TextCanvas target view across passage sizes, from a
+ * sentence to a long book chapter.
+ * - layout: setTarget plus word wrapping at a 1000 pixel width
+ * - key: one appended character (every 17th one wrong) through
+ *   ProgressTracker and TextCanvas.update, then painting the cells that
+ *   update() marks dirty, as the RepaintManager would
+ * - window: painting a full 600 pixel viewport at the typing position
+ * - heap: memory retained by the canvas after layout and painting
+ *
+ * Run from the repository root:
+ *   javac -d out -sourcepath . bench/HighlightBenchmark.java
+ *   java -Djava.awt.headless=true -cp out HighlightBenchmark
+ */
+public class HighlightBenchmark {
+
+    private static final int[] SIZES = {50, 500, 5_000, 50_000, 500_000};
+    private static final int KEYSTROKES = 2_000;
+    private static final int WIDTH = 1000, VIEWPORT = 600;
+
+    public static void main(String[] args) {
+        BufferedImage image = new BufferedImage(WIDTH, VIEWPORT, BufferedImage.TYPE_INT_RGB);
+        measure(50_000, image, 3); // warms up every path before the smallest size is timed
+        System.out.println("passage chars | layout ms | mean us/key | max us/key | window us | heap KB");
+        for (int size : SIZES) {
+            measure(size, image, 3);
+            double[] result = measure(size, image, 5);
+            System.out.printf("%13d | %9.2f | %11.2f | %10.2f | %9.1f | %7.0f%n",
+                    size, result[0] / 1e6, result[1] / 1000.0, result[2] / 1000.0, result[3] / 1000.0, result[4] / 1024.0);
+        }
+    }
+
+    /** Returns {layout, mean key, max key, window paint} nanoseconds and retained bytes over the best of the given rounds. */
+    private static double[] measure(int size, BufferedImage image, int rounds) {
+        String target = Bench.passage(size);
+        ProgressTracker tracker = new ProgressTracker();
+        char[] keys = target.toCharArray();
+        for (int k = 16; k < keys.length; k += 17) keys[k] = '#';
+        Segment key = new Segment(keys, 0, 1);
+        double[] best = {Double.MAX_VALUE, Double.MAX_VALUE, 0, Double.MAX_VALUE, 0};
+        for (int round = 0; round < rounds; round++) {
+            long heapBefore = usedHeap();
+            long start = System.nanoTime();
+            TextCanvas canvas = new TextCanvas();
+            canvas.setBorder(new EmptyBorder(20, 20, 20, 20));
+            canvas.setTarget(target);
+            canvas.setBounds(0, 0, WIDTH, canvas.getPreferredSize().height);
+            long layout = System.nanoTime() - start;
+            tracker.reset(target);
+
+            Graphics2D g = image.createGraphics();
+            int count = Math.min(KEYSTROKES, size);
+            // Keystrokes land in the middle of the passage, where a book reader spends most time
+            int from = Math.max(0, size / 2 - count);
+            tracker.insert(0, new Segment(keys, 0, from));
+            canvas.update(tracker, 0);
+            long total = 0, max = 0;
+            for (int k = from; k < from + count; k++) {
+                key.offset = k;
+                long t = System.nanoTime();
+                tracker.insert(k, key);
+                canvas.update(tracker, k);
+                java.awt.Rectangle dirty = canvas.cellBounds(k, Math.min(k + 1, size - 1));
+                g.setClip(0, 0, WIDTH, VIEWPORT);
+                g.translate(0, -dirty.y);
+                g.clipRect(dirty.x, dirty.y, dirty.width, dirty.height);
+                canvas.paint(g);
+                g.translate(0, dirty.y);
+                long elapsed = System.nanoTime() - t;
+                total += elapsed;
+                max = Math.max(max, elapsed);
+            }
+            int top = canvas.cellBounds(from + count - 1, from + count - 1).y;
+            long t = System.nanoTime();
+            g.setClip(0, 0, WIDTH, VIEWPORT);
+            g.translate(0, -top);
+            canvas.paint(g);
+            long window = System.nanoTime() - t;
+            g.dispose();
+            long retained = usedHeap() - heapBefore; // the target string was allocated before
+            double mean = (double) total / count;
+            if (mean < best[1]) { best[1] = mean; best[2] = max; }
+            best[0] = Math.min(best[0], layout);
+            best[3] = Math.min(best[3], window);
+            best[4] = Math.max(0, retained);
+            Bench.sink += canvas.lineCount();
+        }
+        return best;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,138 @@
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowEvent;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.JTextArea;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+/**
+ * StartupBenchmark:
+ * Cold start of the desktop edition, from launching a fresh JVM until the
+ * typing area has accepted the first keystroke.
+ * - Every run is a new JVM: it starts PrecisionTyper, posts one key as soon
+ *   as the typing area takes focus, and exits once the document listeners
+ *   have handled it
+ * - Milestones per run: main entered, window opened, keystroke accepted,
+ *   each in milliseconds since the launch
+ * - Three class-data-sharing setups: none (-Xshare:off), the JDK's default
+ *   archive, and a dynamic archive of this application recorded by one
+ *   training run (-XX:ArchiveClassesAtExit)
+ *
+ * Needs a display (xvfb-run will do). CDS skips classes loaded from a
+ * directory, so run from a jar to archive the application's own classes too:
+ *   javac -d out -sourcepath . PrecisionTyper.java bench/StartupBenchmark.java
+ *   jar --create --file precisiontyper.jar -C out .
+ *   java -cp precisiontyper.jar StartupBenchmark [-n runs] [--corpus dir]
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--child")) {
+            child(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        int runs = 10;
+        List<String> appArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-n")) runs = Integer.parseInt(args[++i]);
+            else appArgs.add(args[i]);
+        }
+        if (GraphicsEnvironment.isHeadless()) {
+            System.err.println("StartupBenchmark needs a display; try xvfb-run.");
+            System.exit(1);
+        }
+        Path archive = Files.createTempFile("precisiontyper", ".jsa");
+        Files.delete(archive);
+        launch(List.of("-XX:ArchiveClassesAtExit=" + archive), appArgs); // training run
+        String[][] setups = {
+                {"no CDS", "-Xshare:off"},
+                {"JDK archive", "-Xshare:auto"},
+                {"app archive", "-XX:SharedArchiveFile=" + archive}};
+        System.out.printf("%-12s %6s | %16s | %16s | %16s%n", "CDS", "runs", "main ms", "window ms", "first key ms");
+        System.out.printf("%-12s %6s | %7s %8s | %7s %8s | %7s %8s%n", "", "", "median", "best", "median", "best", "median", "best");
+        for (String[] setup : setups) {
+            long[][] samples = new long[3][runs];
+            for (int run = 0; run < runs; run++) {
+                long[] result = launch(List.of(setup[1]), appArgs);
+                for (int m = 0; m < 3; m++) samples[m][run] = result[m];
+            }
+            System.out.printf("%-12s %6d", setup[0], runs);
+            for (long[] milestone : samples) {
+                Arrays.sort(milestone);
+                System.out.printf(" | %7d %8d", milestone[runs / 2], milestone[0]);
+            }
+            System.out.println();
+        }
+        Files.deleteIfExists(archive);
+    }
+
+    /** Runs one child JVM; returns its milestones in milliseconds since launch. */
+    private static long[] launch(List<String> jvmOptions, List<String> appArgs) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.addAll(List.of("-Dprecisiontyper.record=false", "-cp", System.getProperty("java.class.path"), "StartupBenchmark", "--child"));
+        command.addAll(appArgs);
+        long launched = System.currentTimeMillis();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        long[] milestones = null;
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            for (String line; (line = out.readLine()) != null; ) {
+                if (!line.startsWith("startup ")) continue;
+                String[] fields = line.split(" ");
+                milestones = new long[fields.length - 1];
+                for (int i = 1; i < fields.length; i++) milestones[i - 1] = Long.parseLong(fields[i]) - launched;
+            }
+        }
+        if (process.waitFor() != 0 || milestones == null) throw new IllegalStateException("startup run failed: " + command);
+        return milestones;
+    }
+
+    // ---- Child JVM ----
+
+    private static long mainAt, windowAt;
+    private static boolean posted;
+
+    private static void child(String[] appArgs) {
+        mainAt = System.currentTimeMillis();
+        Thread timeout = new Thread(() -> {
+            try { Thread.sleep(30_000); } catch (InterruptedException e) { return; }
+            System.out.println("no keystroke accepted within 30 s");
+            System.exit(2);
+        });
+        timeout.setDaemon(true);
+        timeout.start();
+        Toolkit.getDefaultToolkit().addAWTEventListener(event -> {
+            if (event.getID() == WindowEvent.WINDOW_OPENED && windowAt == 0) windowAt = System.currentTimeMillis();
+            if (event.getID() == FocusEvent.FOCUS_GAINED && event.getSource() instanceof JTextArea area && !posted) {
+                posted = true;
+                area.getDocument().addDocumentListener(new DocumentListener() {
+                    public void insertUpdate(DocumentEvent e) {
+                        // Listeners run newest first; report after the typing screen's own listener
+                        EventQueue.invokeLater(() -> {
+                            System.out.println("startup " + mainAt + " " + windowAt + " " + System.currentTimeMillis());
+                            System.exit(0);
+                        });
+                    }
+                    public void removeUpdate(DocumentEvent e) {}
+                    public void changedUpdate(DocumentEvent e) {}
+                });
+                Toolkit.getDefaultToolkit().getSystemEventQueue().postEvent(
+                        new KeyEvent(area, KeyEvent.KEY_TYPED, System.currentTimeMillis(), 0, KeyEvent.VK_UNDEFINED, 't'));
+            }
+        }, AWTEvent.WINDOW_EVENT_MASK | AWTEvent.FOCUS_EVENT_MASK);
+        PrecisionTyper.main(appArgs);
+    }
+}
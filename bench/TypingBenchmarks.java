@@ -0,0 +1,190 @@
+import javax.swing.JLabel;
+import javax.swing.text.Segment;
+
+/**
+ * TypingBenchmarks:
+ * Headless benchmarks of every path that runs on a keystroke, across
+ * passage sizes, typing positions and error rates.
+ * - TypeRacerGame.calculateCorrectChars on a full line
+ * - The ProgressTracker update behind checkProgress
+ * - TypingEngine.onKey plus onBackspace, positional and aligned, the whole
+ *   per-keystroke scoring of every front end; it should allocate nothing
+ * - updateTextStyles: TextCanvas character state updates
+ * - updateLiveStats: PrecisionTyper.showStats, the timeline statistics and
+ *   label updates, positional and aligned
+ * - checkProgress end to end (engine, PrecisionTyper.styleTarget, completion
+ *   check), the work of one RenderScheduler frame; statistics refresh on
+ *   their own cadence
+ * - ClickSoundEngine.playClick on the calling thread
+ * - WeaknessModel.record per keystroke, and adaptive passage selection
+ *   across pools of 100 to 10,000 passages
+ * - TypingMetrics: all four latency stages of a keystroke, with Flight
+ *   Recorder off and with its events recording, and one histogram record
+ *
+ * Keystroke benchmarks type the next character at the typing position and
+ * then delete it, so every operation starts from the same state.
+ *
+ * Run from the repository root (an optional name filter and -wi/-i/-ms
+ * iteration options may follow the class name):
+ *   javac -d out -sourcepath . bench/*.java
+ *   java -Djava.awt.headless=true -cp out TypingBenchmarks
+ */
+public class TypingBenchmarks {
+
+    private static final int[] SIZES = {100, 1_000, 10_000};
+    private static final double[] POSITIONS = {0.05, 0.5, 0.95};
+    private static final double[] ERROR_RATES = {0.0, 0.05, 0.2};
+    private static final int[] POOL_SIZES = {100, 1_000, 10_000};
+
+    public static void main(String[] args) {
+        Bench bench = new Bench(args);
+        for (int size : SIZES) {
+            for (double errors : ERROR_RATES) calculateCorrectChars(bench, size, errors);
+        }
+        for (int size : SIZES) {
+            for (double position : POSITIONS) {
+                for (double errors : ERROR_RATES) {
+                    String params = String.format("size=%d pos=%.2f err=%.2f", size, position, errors);
+                    new Keystrokes(size, position, errors).register(bench, params);
+                }
+            }
+        }
+        weaknessModel(bench);
+        typingMetrics(bench);
+        ClickSoundEngine engine = ClickSoundEngine.open();
+        bench.run("playClick", engine.isAvailable() ? "audio line" : "no audio line (no-op)", () -> { engine.playClick(); return 1; });
+        engine.close();
+    }
+
+    private static void calculateCorrectChars(Bench bench, int size, double errors) {
+        String target = Bench.passage(size);
+        String typed = new String(Bench.typedWithErrors(target, errors));
+        TypeRacerGame game = new TypeRacerGame(new String[0]);
+        bench.run("calculateCorrectChars", String.format("size=%d err=%.2f", size, errors),
+                () -> game.calculateCorrectChars(target, typed));
+    }
+
+    private static void weaknessModel(Bench bench) {
+        WeaknessModel model = new WeaknessModel();
+        java.util.Random random = new java.util.Random(7);
+        String text = Bench.passage(10_000);
+        int[] at = {1};
+        bench.run("WeaknessModel.record", "", () -> {
+            int i = at[0] = at[0] + 1 < text.length() ? at[0] + 1 : 1;
+            model.record(text.charAt(i - 1), text.charAt(i), random.nextInt(20) != 0, 150_000_000L);
+            return i;
+        });
+        String vocabulary = "the quick brown fox jumps over lazy dog while programs must be written for people to read "
+                + "and only incidentally for machines execute; {x = y[i] * 2;} Zebra QUIZ 1234567890";
+        for (int pool : POOL_SIZES) {
+            WeaknessModel.BigramIndex index = WeaknessModel.BigramIndex.build(pool, row -> {
+                java.util.Random words = new java.util.Random(row);
+                StringBuilder sb = new StringBuilder(200);
+                while (sb.length() < 200) sb.append(vocabulary, words.nextInt(vocabulary.length() - 8), vocabulary.length()).setLength(sb.length() > 200 ? 200 : sb.length());
+                return sb.toString();
+            });
+            bench.run("WeaknessModel.pick", "pool=" + pool, () -> {
+                model.record('q', 'u', false, 900_000_000L); // new data forces the weights to be recomputed
+                return model.pick(index, null, pool, random);
+            });
+        }
+    }
+
+    private static void typingMetrics(Bench bench) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] value = {0};
+        bench.run("LatencyHistogram.record", "", () -> {
+            histogram.record(value[0] = (value[0] + 7919) & 0xFFFFFF);
+            return value[0];
+        });
+        TypingMetrics metrics = new TypingMetrics();
+        metrics.lookUpEventTypes();
+        for (boolean recording : new boolean[]{false, true}) {
+            try (jdk.jfr.Recording jfr = new jdk.jfr.Recording()) {
+                if (recording) {
+                    jfr.enable("precisiontyper.Keystroke");
+                    jfr.enable("precisiontyper.InputLatency");
+                    jfr.setToDisk(false);
+                    jfr.start();
+                }
+                bench.run("TypingMetrics.keystroke", recording ? "JFR recording" : "JFR off", () -> {
+                    long now = System.nanoTime();
+                    metrics.received(now);
+                    metrics.scored(now, 0, 1, false);
+                    metrics.styled(true);
+                    metrics.painted(now);
+                    return now;
+                });
+            }
+        }
+    }
+
+    /** Shared state for the per-keystroke benchmarks of one parameter combination. */
+    private static final class Keystrokes {
+        private final TypingEngine engine = new TypingEngine(4096), aligned = new TypingEngine(4096);
+        private final ProgressTracker tracker = engine.progress();
+        private final TextCanvas highlighter = new TextCanvas();
+        private final JLabel timerLabel = new JLabel(), wpmLabel = new JLabel(), accuracyLabel = new JLabel();
+        private final RenderScheduler scheduler = new RenderScheduler(() -> {}, () -> {}, 250);
+        private final Segment key;
+        private final int position;
+        private long now;
+
+        Keystrokes(int size, double position, double errors) {
+            String target = Bench.passage(size);
+            char[] typed = Bench.typedWithErrors(target, errors);
+            this.position = (int)(size * position);
+            engine.reset(target, false);
+            aligned.reset(target, true);
+            highlighter.setTarget(target);
+            for (int i = 0; i < this.position; i++) {
+                engine.onKey(typed[i], now += 150_000_000L);
+                aligned.onKey(typed[i], now);
+            }
+            PrecisionTyper.styleTarget(highlighter, engine, 0);
+            key = new Segment(typed, this.position, 1);
+        }
+
+        void register(Bench bench, String params) {
+            bench.run("ProgressTracker.keystroke", params, () -> {
+                tracker.insert(position, key);
+                tracker.remove(position, 1);
+                return tracker.correctCount();
+            });
+            char c = key.array[key.offset];
+            bench.run("TypingEngine.keystroke", params, () -> {
+                engine.onKey(c, now += 150_000_000L);
+                engine.onBackspace(now);
+                return engine.correctCount();
+            });
+            bench.run("TypingEngine.keystroke", params + " aligned", () -> {
+                aligned.onKey(c, now += 150_000_000L);
+                aligned.onBackspace(now);
+                return aligned.correctCount();
+            });
+            bench.run("updateTextStyles", params, () -> {
+                tracker.insert(position, key);
+                PrecisionTyper.styleTarget(highlighter, engine, position);
+                tracker.remove(position, 1);
+                PrecisionTyper.styleTarget(highlighter, engine, position);
+                return tracker.typedLength();
+            });
+            bench.run("updateLiveStats", params, () -> {
+                PrecisionTyper.showStats(engine, now, timerLabel, wpmLabel, accuracyLabel, scheduler);
+                return wpmLabel.getText().length();
+            });
+            bench.run("updateLiveStats", params + " aligned", () -> {
+                PrecisionTyper.showStats(aligned, now, timerLabel, wpmLabel, accuracyLabel, scheduler);
+                return accuracyLabel.getToolTipText().length();
+            });
+            bench.run("checkProgress", params, () -> {
+                engine.onKey(c, now += 150_000_000L);
+                PrecisionTyper.styleTarget(highlighter, engine, position);
+                boolean complete = engine.isComplete();
+                engine.onBackspace(now);
+                PrecisionTyper.styleTarget(highlighter, engine, position);
+                return complete ? 1 : engine.correctCount();
+            });
+        }
+    }
+}
@@ -0,0 +1,49 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Checks:
+ * Shared helpers for the Java file-format checks in scripts/, which run
+ * with plain java the way the Node checks run with node.
+ * - check() and equal() fail the run with a message, with or without -ea
+ * - A scratch directory that is removed again when the check exits
+ * - cut() rewrites a file as a prefix of known bytes, as a crash would leave it
+ */
+final class Checks {
+
+    private Checks() {}
+
+    static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+
+    static void equal(Object expected, Object actual, String message) {
+        if (!Objects.equals(expected, actual)) throw new AssertionError(message + ": expected " + expected + ", got " + actual);
+    }
+
+    /** A fresh temporary directory, deleted with its contents on exit. */
+    static Path scratch(String prefix) throws IOException {
+        Path dir = Files.createTempDirectory(prefix);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                    try { Files.deleteIfExists(p); } catch (IOException e) { throw new UncheckedIOException(e); }
+                });
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Could not remove " + dir + ": " + e);
+            }
+        }));
+        return dir;
+    }
+
+    /** Replaces file with the first length bytes of bytes. */
+    static void cut(Path file, byte[] bytes, int length) throws IOException {
+        Files.write(file, Arrays.copyOf(bytes, length));
+    }
+}
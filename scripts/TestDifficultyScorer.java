@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * TestDifficultyScorer:
+ * Parity and cache checks for the Java port of scripts/difficulty-score.mjs.
+ * - Every vector in scripts/difficulty-vectors.json scores exactly as
+ *   scorePassage scored it; test-difficulty-score.mjs holds the JS side to
+ *   the same file
+ * - Scores read back from difficulty-cache.bin match a fresh computation
+ * - The cache cut at every byte offset gives the same scores, is left
+ *   record-aligned, and is not appended to again once complete
+ */
+final class TestDifficultyScorer {
+
+    public static void main(String[] args) throws IOException {
+        String vectors = new String(Files.readAllBytes(Paths.get("scripts", "difficulty-vectors.json")), StandardCharsets.UTF_8);
+        int checked = 0;
+        for (String line : vectors.split("\n")) {
+            line = line.strip();
+            if (!line.startsWith("[\"")) continue;
+            int[] at = {1};
+            String collection = string(line, at);
+            int score = (int) number(line, at);
+            double raw = number(line, at);
+            String text = string(line, at);
+            String vector = "vector " + checked + " (" + collection + ")";
+            int profile = DifficultyScorer.profile(collection);
+            double javaRaw = DifficultyScorer.rawScore(profile, text, new DifficultyScorer.Metrics());
+            Checks.equal(score, DifficultyScorer.score(collection, text), vector + " score");
+            Checks.check(Math.abs(javaRaw - raw) <= 0.0005 + 1e-9, vector + " raw score: expected " + raw + ", got " + javaRaw);
+            checked++;
+        }
+        Checks.check(checked >= 30, "parity vectors read: " + checked);
+
+        PassageStore store = PassageStore.load(PassageStore.locateTexts(), null);
+        int[] passages = new int[store.size()];
+        Arrays.setAll(passages, i -> i);
+        int[] expected = new int[passages.length];
+        for (int i = 0; i < passages.length; i++) expected[i] = DifficultyScorer.score(store.collectionOf(i), store.text(i));
+
+        Path cache = Checks.scratch("difficulty-test").resolve("difficulty-cache.bin");
+        Checks.check(Arrays.equals(expected, new DifficultyScorer(cache).scoreAll(store, passages)), "scores without a cache");
+        byte[] full = Files.readAllBytes(cache);
+        Checks.equal(0, (full.length - 8) % 9, "cache record alignment");
+        Checks.check(Arrays.equals(expected, new DifficultyScorer(cache).scoreAll(store, passages)), "scores from the cache");
+        Checks.check(Arrays.equals(full, Files.readAllBytes(cache)), "complete cache left unchanged");
+
+        byte[] stale = full.clone();
+        for (int i = 8; i < stale.length; i += 9) stale[i + 8] = (byte) (stale[i + 8] ^ 0x40);
+        Files.write(cache, stale);
+        int[] fromCache = new DifficultyScorer(cache).scoreAll(store, passages);
+        for (int i = 0; i < passages.length; i++) Checks.equal(expected[i] ^ 0x40, fromCache[i], "passage " + i + " served from the cache");
+
+        for (int length = 0; length < full.length; length++) {
+            Checks.cut(cache, full, length);
+            String cut = "cache cut at " + length;
+            Checks.check(Arrays.equals(expected, new DifficultyScorer(cache).scoreAll(store, passages)), cut + " scores");
+            long size = Files.size(cache);
+            Checks.equal(full.length, (int) size, cut + " length after rescoring");
+            Checks.check(Arrays.equals(expected, new DifficultyScorer(cache).scoreAll(store, passages)), cut + " scores after repair");
+            Checks.equal(size, Files.size(cache), cut + " length after a second run");
+        }
+
+        System.out.println("Difficulty scorer parity and cache tests passed.");
+    }
+
+    /** Reads the JSON string starting at or after at[0], as JSON.stringify writes it. */
+    private static String string(String line, int[] at) {
+        int i = line.indexOf('"', at[0]) + 1;
+        StringBuilder out = new StringBuilder();
+        for (char c; (c = line.charAt(i++)) != '"'; ) {
+            if (c != '\\') { out.append(c); continue; }
+            char e = line.charAt(i++);
+            switch (e) {
+                case 'n': out.append('\n'); break;
+                case 't': out.append('\t'); break;
+                case 'r': out.append('\r'); break;
+                case 'b': out.append('\b'); break;
+                case 'f': out.append('\f'); break;
+                case 'u': out.append((char) Integer.parseInt(line.substring(i, i + 4), 16)); i += 4; break;
+                default: out.append(e);
+            }
+        }
+        at[0] = i;
+        return out.toString();
+    }
+
+    /** Reads the JSON number after the next comma at or after at[0]. */
+    private static double number(String line, int[] at) {
+        int from = line.indexOf(',', at[0]) + 1, to = from;
+        while (to < line.length() && line.charAt(to) != ',' && line.charAt(to) != ']') to++;
+        at[0] = to;
+        return Double.parseDouble(line.substring(from, to).strip());
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * TestHistoryStore:
+ * Round-trip and crash checks for history.bin.
+ * - Records and settings read back exactly after reopening
+ * - The file cut at every byte offset reopens with the whole records that
+ *   survived, and the next append lands aligned after them
+ * - A settings write torn at any byte keeps the previous settings
+ * - A record another process has not finished is not counted until its CRC matches
+ */
+final class TestHistoryStore {
+
+    private static final int HEADER = 64, ROUNDS = 6;
+    private static final int FIRST = HistoryStore.LIGHT_MODE | HistoryStore.ALIGN, SECOND = HistoryStore.SOUND_OFF;
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Checks.scratch("history-test");
+        Path file = dir.resolve("history.bin");
+
+        try (HistoryStore store = HistoryStore.open(file)) {
+            Checks.equal(0, store.size(), "new store size");
+            Checks.check(!store.hasSettings(), "new store has no settings");
+            Checks.equal(-1, store.personalBest(HistoryStore.ANY_DIFFICULTY), "new store best");
+            store.saveSettings(FIRST);
+            for (int i = 0; i < ROUNDS; i++) append(store, i);
+        }
+        byte[] first = Files.readAllBytes(file);
+        try (HistoryStore store = HistoryStore.open(file)) {
+            store.saveSettings(SECOND);
+        }
+        byte[] full = Files.readAllBytes(file);
+        Checks.equal(HEADER + ROUNDS * HistoryStore.RECORD, full.length, "file length");
+        Checks.equal(SECOND, HistoryStore.peekSettings(file, -1), "peeked settings");
+
+        try (HistoryStore store = HistoryStore.open(file)) {
+            Checks.equal(ROUNDS, store.size(), "reopened size");
+            Checks.equal(SECOND, store.settings(-1), "reopened settings");
+            verify(store, ROUNDS, "reopened");
+            HistoryStore.Averages last = store.trailing(2, HistoryStore.ANY_DIFFICULTY);
+            Checks.equal(2, last.rounds, "trailing rounds");
+            Checks.equal((wpm(ROUNDS - 1) + wpm(ROUNDS - 2)) / 2, last.wpm, "trailing WPM");
+        }
+
+        for (int length = 0; length < full.length; length++) {
+            Checks.cut(file, full, length);
+            int expected = length < HEADER ? 0 : (length - HEADER) / HistoryStore.RECORD;
+            String at = "cut at " + length;
+            try (HistoryStore store = HistoryStore.open(file)) {
+                Checks.equal(expected, store.size(), at + " size");
+                Checks.equal(length < HEADER ? -1 : SECOND, store.settings(-1), at + " settings");
+                verify(store, expected, at);
+                append(store, expected);
+                Checks.equal(expected + 1, store.size(), at + " size after append");
+                verify(store, expected + 1, at + " after append");
+            }
+            Checks.equal((long) HEADER + (expected + 1) * HistoryStore.RECORD, Files.size(file), at + " length after append");
+        }
+
+        for (int length = 0; length <= HEADER; length++) {
+            byte[] torn = first.clone();
+            System.arraycopy(full, 0, torn, 0, length);
+            Files.write(file, torn);
+            int settings = HistoryStore.peekSettings(file, -1);
+            Checks.check(settings == FIRST || settings == SECOND, "settings torn at " + length + " read " + settings);
+            try (HistoryStore store = HistoryStore.open(file)) {
+                Checks.equal(settings, store.settings(-1), "opened settings torn at " + length);
+                Checks.equal(ROUNDS, store.size(), "size with settings torn at " + length);
+            }
+        }
+        Checks.equal(SECOND, HistoryStore.peekSettings(file, -1), "settings after the whole write");
+
+        Files.write(file, full);
+        try (HistoryStore reader = HistoryStore.open(file);
+             FileChannel writer = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer record = ByteBuffer.wrap(full, HEADER, HistoryStore.RECORD).slice();
+            ByteBuffer unfinished = ByteBuffer.allocate(HistoryStore.RECORD).put(record.duplicate()).flip();
+            unfinished.put(HistoryStore.RECORD - 1, (byte) ~unfinished.get(HistoryStore.RECORD - 1));
+            writer.write(unfinished, full.length);
+            Checks.equal(ROUNDS, reader.size(), "size with an unfinished record");
+            writer.write(record, full.length);
+            Checks.equal(ROUNDS + 1, reader.size(), "size once the record is finished");
+            Checks.equal(wpm(0), (double) reader.wpmAt(ROUNDS), "finished record WPM");
+        }
+
+        System.out.println("History store round-trip, truncation, and torn-write tests passed.");
+    }
+
+    private static void append(HistoryStore store, int i) throws IOException {
+        store.append(1_700_000_000_000L + i * 60_000L, "passage-" + i, i % 2, i % 4, 20_000_000_000L + i,
+                wpm(i), 0.5 + i / 16.0, i, 100 + i);
+    }
+
+    private static double wpm(int i) {
+        return 40 + (i * 7 % 5) * 12.5;
+    }
+
+    /** Checks the first n records and the personal bests folded from them. */
+    private static void verify(HistoryStore store, int n, String at) throws IOException {
+        int[] best = { -1, -1, -1, -1 };
+        for (int i = 0; i < n; i++) {
+            String record = at + " record " + i;
+            Checks.equal(1_700_000_000_000L + i * 60_000L, store.timestampAt(i), record + " time");
+            Checks.equal(HistoryStore.idHash("passage-" + i), store.passageHashAt(i), record + " passage");
+            Checks.equal(i % 2, store.editionAt(i), record + " edition");
+            Checks.equal(i % 4, store.difficultyAt(i), record + " difficulty");
+            Checks.equal(20_000_000_000L + i, store.durationNanosAt(i), record + " duration");
+            Checks.equal(wpm(i), (double) store.wpmAt(i), record + " WPM");
+            Checks.equal(0.5 + i / 16.0, (double) store.accuracyAt(i), record + " accuracy");
+            Checks.equal(i, store.errorsAt(i), record + " errors");
+            Checks.equal(100 + i, store.charactersAt(i), record + " characters");
+            for (int d : new int[] { i % 4, HistoryStore.ANY_DIFFICULTY }) {
+                if (best[d] < 0 || wpm(i) > wpm(best[d])) best[d] = i;
+            }
+        }
+        for (int d = 0; d < best.length; d++) Checks.equal(best[d], store.personalBest(d), at + " best of difficulty " + d);
+    }
+}
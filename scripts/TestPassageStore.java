@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * TestPassageStore:
+ * Round-trip and truncation checks for the passage index.
+ * - JSON escapes, surrogate pairs and raw UTF-8 decode back exactly, and
+ *   unknown members are skipped
+ * - texts.json cut at every byte offset is refused with an IOException,
+ *   never loaded in part
+ * - A corpus file cut at every byte offset keeps its whole passages, and
+ *   its last passage is a prefix of the full one
+ * - The shipped texts.json loads every pool with unique ids
+ */
+final class TestPassageStore {
+
+    private static final String ESCAPED = "Tab\\there, \\\"quoted\\\", back\\\\slash,\\nline \\u2014 emoji \\ud83d\\ude00, raw é—";
+    private static final String DECODED = "Tab\there, \"quoted\", back\\slash,\nline — emoji 😀, raw é—";
+    private static final String CORPUS = "First passage\r\nsecond line\r\n\r\n  \r\nSecond passage.\n\n\nThird, with no newline";
+    private static final String[] CORPUS_TEXTS = {"First passage\nsecond line", "Second passage.", "Third, with no newline"};
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Checks.scratch("passage-test");
+        Path texts = dir.resolve("texts.json");
+        Path corpus = Files.createDirectory(dir.resolve("corpus"));
+
+        StringBuilder json = new StringBuilder("{\"schemaVersion\": 3, \"notes\": {\"list\": [1, \"x\", {\"y\": null}]},\n \"collections\": {");
+        for (String c : PassageStore.COLLECTIONS) {
+            json.append(c.equals("general") ? "" : ",").append("\n  \"").append(c).append("\": {");
+            for (String d : PassageStore.DIFFICULTIES) {
+                String text = c.equals("general") && d.equals("easy") ? ESCAPED : c + " " + d + " passage";
+                json.append(d.equals("easy") ? "" : ",").append("\n   \"").append(d).append("\": [")
+                    .append("{\"id\": \"").append(c).append('-').append(d).append("\", \"source\": {\"title\": \"t\"}, \"text\": \"")
+                    .append(text).append("\"}]");
+            }
+            json.append('}');
+        }
+        byte[] full = json.append("}}").toString().getBytes(StandardCharsets.UTF_8);
+        Files.write(texts, full);
+
+        PassageStore store = PassageStore.load(texts, null);
+        Checks.equal(12, store.size(), "passages");
+        for (String c : PassageStore.COLLECTIONS) {
+            for (String d : PassageStore.DIFFICULTIES) {
+                Checks.equal(1, store.poolSize(c, d), c + "/" + d + " pool size");
+                int passage = store.passage(c, d, 0);
+                Checks.equal(c + "-" + d, store.id(passage), c + "/" + d + " id");
+                Checks.equal(c.equals("general") && d.equals("easy") ? DECODED : c + " " + d + " passage", store.text(passage), c + "/" + d + " text");
+            }
+        }
+
+        for (int length = 0; length < full.length; length++) {
+            Checks.cut(texts, full, length);
+            try {
+                PassageStore.load(texts, null);
+                throw new AssertionError("texts.json cut at " + length + " was loaded");
+            } catch (IOException expected) {
+                // refused as a whole
+            }
+        }
+        Files.write(texts, full);
+
+        byte[] plain = CORPUS.getBytes(StandardCharsets.UTF_8);
+        Path pool = corpus.resolve("general.easy.txt");
+        for (int length = 0; length <= plain.length; length++) {
+            Checks.cut(pool, plain, length);
+            store = PassageStore.load(texts, corpus);
+            List<String> kept = new ArrayList<>();
+            for (int i = 0; i < store.poolSize("general", "easy"); i++) {
+                int passage = store.passage("general", "easy", i);
+                if (store.id(passage).startsWith("general.easy.txt#")) {
+                    Checks.equal("general.easy.txt#" + kept.size(), store.id(passage), "corpus cut at " + length + " id");
+                    kept.add(store.text(passage));
+                }
+            }
+            String at = "corpus cut at " + length;
+            Checks.check(kept.size() <= CORPUS_TEXTS.length, at + " passage count");
+            for (int i = 0; i < kept.size(); i++) {
+                String text = kept.get(i);
+                Checks.check(i < kept.size() - 1 ? text.equals(CORPUS_TEXTS[i]) : !text.isEmpty() && CORPUS_TEXTS[i].startsWith(text), at + " passage " + i + ": " + text);
+            }
+            if (length == plain.length) Checks.equal(List.of(CORPUS_TEXTS), kept, "whole corpus file");
+        }
+
+        store = PassageStore.load(PassageStore.locateTexts(), null);
+        Set<String> ids = new HashSet<>();
+        for (String c : PassageStore.COLLECTIONS) {
+            for (String d : PassageStore.DIFFICULTIES) {
+                for (int i = 0; i < store.poolSize(c, d); i++) {
+                    int passage = store.passage(c, d, i);
+                    Checks.check(ids.add(store.id(passage)), "duplicate id " + store.id(passage));
+                    Checks.check(!store.text(passage).isBlank(), store.id(passage) + " has text");
+                }
+            }
+        }
+        Checks.equal(store.size(), ids.size(), "shipped passages");
+
+        System.out.println("Passage store round-trip and truncation tests passed.");
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.text.Segment;
+
+/**
+ * TestSessionLog:
+ * Round-trip and crash checks for the SessionRecorder keystroke logs.
+ * - Every recorded event decodes back exactly, including multi-byte
+ *   varints, non-ASCII text and Align changes in the header and mid-round
+ * - A log cut at every byte offset decodes to a prefix of the events, with
+ *   every decoded round closed once
+ * - Version 1 logs still decode; other versions and foreign files are refused
+ */
+final class TestSessionLog {
+
+    /** Collects decoded events as text; round start times are kept apart. */
+    static final class Events implements SessionReplay.Listener {
+        final List<String> events = new ArrayList<>();
+        final List<Long> millis = new ArrayList<>();
+
+        public void round(String passageId, String target, boolean align, long epochMillis) {
+            events.add("round " + passageId + " " + target + " " + align);
+            millis.add(epochMillis);
+        }
+        public void insert(long nanos, int offset, Segment text) { events.add("insert " + nanos + " " + offset + " " + text); }
+        public void remove(long nanos, int offset, int length) { events.add("remove " + nanos + " " + offset + " " + length); }
+        public void align(long nanos, boolean on) { events.add("align " + nanos + " " + on); }
+        public void end(long nanos) { events.add("end " + nanos); }
+    }
+
+    private static final long MS = 1_000_000L;
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Checks.scratch("session-test");
+        System.setProperty("precisiontyper.sessions", dir.toString());
+        String quote = "Café — naïve “quotes”";
+        String code = "x".repeat(200) + "\n    return ε;";
+        long before = System.currentTimeMillis(), t = 5_000_000_000L;
+        List<String> expected = new ArrayList<>();
+
+        SessionRecorder recorder = SessionRecorder.open("test");
+        Checks.check(recorder.isRecording(), "recorder opened");
+        recorder.startRound("general-1", "The quick fox.", false, t);
+        expected.add("round general-1 The quick fox. false");
+        recorder.insert(t + 120 * MS, 0, "T");
+        expected.add("insert " + 120 * MS + " 0 T");
+        recorder.insert(t + 250 * MS, 1, "hw");
+        expected.add("insert " + 250 * MS + " 1 hw");
+        recorder.remove(t + 400 * MS, 2, 1);
+        expected.add("remove " + 400 * MS + " 2 1");
+        recorder.align(t + 450 * MS, true);
+        expected.add("align " + 450 * MS + " true");
+        recorder.insert(t + 900 * MS, 2, "e quick fox.");
+        expected.add("insert " + 900 * MS + " 2 e quick fox.");
+        recorder.endRound(t + 1000 * MS);
+        expected.add("end " + 1000 * MS);
+
+        t += 2000 * MS;
+        recorder.startRound("quotes-1", quote, true, t);
+        recorder.align(t + MS, false);
+        expected.add("round quotes-1 " + quote + " false");
+        recorder.insert(t + 3 * MS, 0, "Café — ");
+        expected.add("insert " + 3 * MS + " 0 Café — ");
+        recorder.insert(t + 90_000 * MS, 7, "naïve “quotes”");
+        expected.add("insert " + 90_000 * MS + " 7 naïve “quotes”");
+        recorder.align(t + 90_001 * MS, true);
+        expected.add("align " + 90_001 * MS + " true");
+        recorder.endRound(t + 90_002 * MS);
+        expected.add("end " + 90_002 * MS);
+
+        t += 100_000 * MS;
+        recorder.startRound("skipped", "Never typed.", false, t);
+        recorder.startRound("code-1", code, true, t + 10 * MS);
+        expected.add("round code-1 " + code + " true");
+        recorder.insert(t + 20 * MS, 0, "x".repeat(200));
+        expected.add("insert " + 10 * MS + " 0 " + "x".repeat(200));
+        recorder.insert(t + 30 * MS, 200, "\n    return ε;");
+        expected.add("insert " + 20 * MS + " 200 \n    return ε;");
+        recorder.close();
+        expected.add("end " + 20 * MS);
+        long after = System.currentTimeMillis();
+
+        List<Path> logs;
+        try (var files = Files.list(dir)) {
+            logs = files.toList();
+        }
+        Checks.equal(1, logs.size(), "log files");
+        byte[] full = Files.readAllBytes(logs.get(0));
+        Events decoded = decode(full, full.length);
+        Checks.equal(expected, decoded.events, "decoded events");
+        for (long millis : decoded.millis) Checks.check(millis >= before && millis <= after, "round start time " + millis);
+
+        SessionReplay.Replayer replayer = new SessionReplay.Replayer(false, false);
+        SessionReplay.read(ByteBuffer.wrap(full), replayer);
+        Checks.equal(3L, replayer.rounds, "replayed rounds");
+        Checks.equal(3L, replayer.completed, "replayed completed rounds");
+
+        for (int length = 0; length < full.length; length++) {
+            String at = "cut at " + length;
+            if (length < 5) {
+                refused(Arrays.copyOf(full, length), at);
+                continue;
+            }
+            List<String> events = decode(full, length).events;
+            List<String> kept = new ArrayList<>(), whole = new ArrayList<>();
+            int rounds = 0, ends = 0;
+            for (String event : events) {
+                if (event.startsWith("round")) rounds++;
+                if (event.startsWith("end")) ends++;
+                else kept.add(event);
+            }
+            for (String event : expected) if (!event.startsWith("end")) whole.add(event);
+            Checks.equal(whole.subList(0, kept.size()), kept, at + " events");
+            Checks.equal(rounds, ends, at + " closed rounds");
+            Checks.check(events.isEmpty() || events.get(events.size() - 1).startsWith("end"), at + " ends with its round closed");
+        }
+
+        ByteBuffer v1 = ByteBuffer.allocate(64).putInt(SessionRecorder.MAGIC).put((byte) 1);
+        v1.put(SessionRecorder.ROUND).put((byte) 1).put((byte) 2).put("p1".getBytes(StandardCharsets.US_ASCII))
+          .put((byte) 2).put("ab".getBytes(StandardCharsets.US_ASCII));
+        v1.put(SessionRecorder.INSERT).put((byte) 5).put((byte) 0).put((byte) 2).put((byte) 'a').put((byte) 'b');
+        v1.put(SessionRecorder.END).put((byte) 1);
+        byte[] version1 = Arrays.copyOf(v1.array(), v1.position());
+        Checks.equal(List.of("round p1 ab false", "insert 5 0 ab", "end 6"), decode(version1, version1.length).events, "version 1 events");
+        byte[] alignInVersion1 = Arrays.copyOf(version1, version1.length + 3);
+        alignInVersion1[version1.length] = SessionRecorder.ALIGN;
+        refused(alignInVersion1, "ALIGN event in a version 1 log");
+        byte[] version3 = full.clone();
+        version3[4] = 3;
+        refused(version3, "version 3 log");
+        refused("PTHS\u0001 history".getBytes(StandardCharsets.US_ASCII), "foreign file");
+
+        System.out.println("Session log round-trip, truncation, and version tests passed.");
+    }
+
+    private static Events decode(byte[] log, int length) throws IOException {
+        Events events = new Events();
+        SessionReplay.read(ByteBuffer.wrap(log, 0, length), events);
+        return events;
+    }
+
+    private static void refused(byte[] log, String what) {
+        try {
+            SessionReplay.read(ByteBuffer.wrap(log), new Events());
+        } catch (IOException expected) {
+            return;
+        }
+        throw new AssertionError(what + " was not refused");
+    }
+}
@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * TestWeaknessModel:
+ * Round-trip and crash checks for weakness.bin.
+ * - A saved model loads back with the same counts, latencies and weights,
+ *   and picks the same passages
+ * - The file cut at every byte offset, or not a weakness file at all,
+ *   loads as an empty model instead of a partly filled one
+ * - A temporary file left by a crashed save does not affect the next save
+ */
+final class TestWeaknessModel {
+
+    private static final String[] PASSAGES = {
+        "The quick brown fox jumps over the lazy dog.",
+        "Pack my box with five dozen liquor jugs.",
+        "for (int i = 0; i < n; i++) { sum += a[i]; }",
+        "Zebras quiz vexed jocks; why? {[(<>)]}",
+        "Café — naïve “quotes” and ünïcödé.",
+    };
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Checks.scratch("weakness-test");
+        Path file = dir.resolve("weakness.bin");
+
+        Checks.equal(0L, WeaknessModel.load(file).keystrokes(), "missing file keystrokes");
+
+        WeaknessModel model = new WeaknessModel();
+        Random random = new Random(7);
+        for (String passage : PASSAGES) {
+            char previous = ' ';
+            for (int i = 0; i < passage.length(); i++) {
+                char target = passage.charAt(i);
+                boolean slow = "{}[]()<>;“”".indexOf(target) >= 0;
+                model.record(previous, target, random.nextInt(slow ? 3 : 20) != 0,
+                        i == 0 ? -1 : (slow ? 450 : 120) * 1_000_000L + random.nextInt(40_000_000));
+                previous = target;
+            }
+        }
+        model.record('a', 'b', true, 5_000_000_000L); // too long a pause to time
+        Files.write(dir.resolve("weakness.bin.tmp"), new byte[] { 'P', 'T' });
+        model.save(file);
+        Checks.check(!Files.exists(dir.resolve("weakness.bin.tmp")), "temporary file moved into place");
+
+        WeaknessModel loaded = WeaknessModel.load(file);
+        Checks.equal(model.keystrokes(), loaded.keystrokes(), "loaded keystrokes");
+        Checks.check(Arrays.equals(model.weights(), loaded.weights()), "loaded weights");
+        WeaknessModel.BigramIndex index = WeaknessModel.BigramIndex.build(PASSAGES.length, i -> PASSAGES[i]);
+        Random picks = new Random(11), loadedPicks = new Random(11);
+        for (int i = 0; i < 50; i++) {
+            Checks.equal(model.pick(index, null, PASSAGES.length, picks), loaded.pick(index, null, PASSAGES.length, loadedPicks), "pick " + i);
+        }
+
+        byte[] full = Files.readAllBytes(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            for (int length = full.length - 1; length >= 0; length--) {
+                channel.truncate(length);
+                Checks.equal(0L, WeaknessModel.load(file).keystrokes(), "cut at " + length + " keystrokes");
+            }
+        }
+        float[] empty = new WeaknessModel().weights();
+        Checks.check(Arrays.equals(empty, WeaknessModel.load(file).weights()), "empty file weights");
+
+        for (int at : new int[] { 0, 4 }) {
+            byte[] foreign = full.clone();
+            foreign[at] ^= 1;
+            Files.write(file, foreign);
+            Checks.equal(0L, WeaknessModel.load(file).keystrokes(), "bad " + (at == 0 ? "magic" : "version") + " keystrokes");
+        }
+
+        System.out.println("Weakness model round-trip and truncation tests passed.");
+    }
+}
@@ -74,8 +74,18 @@ assert.ok(
     ).score
 );
 
+// Fixed vectors shared with the Java port, which TestDifficultyScorer.java checks against the same file.
+const vectors = JSON.parse(
+    fs.readFileSync(new URL('./difficulty-vectors.json', import.meta.url), 'utf8')
+);
+for (const [collection, score, rawScore, text] of vectors) {
+    const result = scorePassage(collection, text);
+    assert.equal(result.score, score, `${collection} vector score: ${text.slice(0, 40)}`);
+    assert.equal(result.rawScore, rawScore, `${collection} vector raw score: ${text.slice(0, 40)}`);
+}
+
 for (const band of Object.values(DIFFICULTY_BANDS)) {
     assert.ok(band.minimum >= 0 && band.maximum <= 100 && band.minimum <= band.maximum);
 }
 
-console.log('Difficulty scoring, calibration, and separation tests passed.');
+console.log('Difficulty scoring, calibration, separation, and parity vector tests passed.');